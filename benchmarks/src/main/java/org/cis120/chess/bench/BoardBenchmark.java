@@ -0,0 +1,97 @@
+package org.cis120.chess.bench;
+
+import org.cis120.chess.logic.Board;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks for the per-position work of {@link Board}: computing the moves of every
+ * piece, evaluating the position, playing and undoing a move, and making and unmaking a move
+ * the way the search does. The board remembers the moves of its pieces at a version of its
+ * position, so the benchmark of that work makes and unmakes a move to change the version, and
+ * the cost of that alone is {@link #makeUnmakeMove}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+    /**
+     * The first legal move of a position, which can be made and unmade repeatedly without
+     * changing the board
+     */
+    @State(Scope.Thread)
+    public static class MoveState {
+        @Param({"START", "KIWIPETE", "POSITION_3", "POSITION_4", "POSITION_5", "POSITION_6"})
+        public String position;
+
+        Board board;
+        int move;
+        int[] tiles;
+        final int[] moves = new int[256];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            board = Positions.create(position);
+            board.generateMoves(moves, 0);
+            move = moves[0];
+            tiles = Positions.firstMove(board);
+        }
+    }
+
+    /**
+     * Makes and unmakes a move, which changes the version of the position, and then computes
+     * the moves of every piece. Subtract {@link #makeUnmakeMove} to get the computation alone.
+     */
+    @Benchmark
+    public void updateMovesForPieces(MoveState state) {
+        state.board.makeMove(state.move);
+        state.board.unmakeMove();
+        state.board.updateMovesForPieces();
+    }
+
+    @Benchmark
+    public int calculateScoreDifference(MoveState state) {
+        return state.board.calculateScoreDifference(true);
+    }
+
+    /**
+     * Plays the first move of the position through the move list of its piece, the way the
+     * GUI does, and undoes it, leaving the board as it was
+     */
+    @Benchmark
+    public void playUndo(MoveState state) {
+        Positions.play(state.board, state.tiles);
+        state.board.undo();
+    }
+
+    /**
+     * Makes and unmakes a move the way the search does, which is also the cost the other
+     * benchmarks pay to change the version of the position
+     */
+    @Benchmark
+    public void makeUnmakeMove(MoveState state) {
+        state.board.makeMove(state.move);
+        state.board.unmakeMove();
+    }
+
+    @Benchmark
+    public int generateMoves(MoveState state) {
+        return state.board.generateMoves(state.moves, 0);
+    }
+}
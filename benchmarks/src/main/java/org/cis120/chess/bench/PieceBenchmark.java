@@ -0,0 +1,70 @@
+package org.cis120.chess.bench;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Piece;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks for the move generation of each piece type, using the white pieces of the
+ * Kiwipete position (a busy middlegame). The position remembers its legal moves at a version,
+ * so {@link #findValidMoves} makes and unmakes a move first to have them computed again, and
+ * the cost of that alone is {@link BoardBenchmark#makeUnmakeMove}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PieceBenchmark {
+
+    /**
+     * The piece to benchmark and its x y coordinates in the Kiwipete position
+     */
+    @Param({"KING:7:4", "QUEEN:5:5", "ROOK:7:0", "BISHOP:6:4", "KNIGHT:3:4", "PAWN:3:3"})
+    public String piece;
+
+    private Board board;
+    private Piece target;
+    private int move;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = Positions.create("KIWIPETE");
+        String[] parts = piece.split(":");
+        target = board.getPiece(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        int[] moves = new int[256];
+        board.generateMoves(moves, 0);
+        move = moves[0];
+    }
+
+    @Benchmark
+    public void findPossibleMoves() {
+        target.findPossibleMoves();
+    }
+
+    /**
+     * Makes and unmakes a move, which changes the version of the position, and then finds the
+     * valid moves of the piece. Subtract {@link BoardBenchmark#makeUnmakeMove} to get the
+     * search for moves alone.
+     */
+    @Benchmark
+    public void findValidMoves() {
+        board.makeMove(move);
+        board.unmakeMove();
+        target.findValidMoves();
+    }
+}
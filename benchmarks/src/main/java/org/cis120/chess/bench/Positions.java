@@ -0,0 +1,53 @@
+package org.cis120.chess.bench;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Piece;
+import org.cis120.chess.logic.Tile;
+import org.cis120.chess.perft.PerftPosition;
+
+/**
+ * Helpers for setting up the positions the benchmarks run on
+ */
+final class Positions {
+
+    private Positions() {
+    }
+
+    /**
+     * Creates a board set up to one of the perft reference positions
+     * @param name the name of the {@link PerftPosition}
+     * @return the new board
+     */
+    static Board create(String name) {
+        return new Board(PerftPosition.valueOf(name).getFen());
+    }
+
+    /**
+     * Finds the first valid move of the player to move, scanning the board row by row
+     * @param board the board
+     * @return the x y coordinates the move starts and ends on
+     */
+    static int[] firstMove(Board board) {
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                Piece piece = board.getPiece(x, y);
+                if (piece != null && piece.getWhite() == board.getTurn()
+                        && piece.getNumValidMoveOptions() > 0) {
+                    Tile target = piece.getValidMoves().get(0);
+                    return new int[] {x, y, target.getX(), target.getY()};
+                }
+            }
+        }
+        throw new IllegalStateException("No valid moves");
+    }
+
+    /**
+     * Plays a move returned by {@link #firstMove(Board)}, promoting to a queen if needed
+     */
+    static void play(Board board, int[] move) {
+        board.playTurn(move[0], move[1]);
+        if (board.playTurn(move[2], move[3])) {
+            board.promote(0);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.cis120.chess.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which adds the allocation rate and bytes allocated
+ * per operation to every result, and writes the results to jmh-result.json so they can be
+ * compared across versions.
+ */
+public final class RunBenchmarks {
+
+    private RunBenchmarks() {
+    }
+
+    /**
+     * @param args an optional regular expression of the benchmarks to run
+     */
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : RunBenchmarks.class.getPackage().getName();
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
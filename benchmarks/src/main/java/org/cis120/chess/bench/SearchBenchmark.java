@@ -0,0 +1,66 @@
+package org.cis120.chess.bench;
+
+import org.cis120.chess.ai.ChessAI;
+import org.cis120.chess.ai.TranspositionTable;
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.perft.PerftPosition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Macro benchmark for a full {@link ChessAI#playTurn()} search to a fixed depth with no time
+ * limit. The transposition table is created once per trial, and every invocation sets the
+ * board up again, clears the table and creates a new ai, so each search starts from nothing,
+ * with no killer moves or history left by the last one, without timing the allocation of the
+ * table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    @Param({"START", "KIWIPETE", "POSITION_3", "POSITION_4", "POSITION_5", "POSITION_6"})
+    public String position;
+
+    @Param({"3"})
+    public int depth;
+
+    private Board board;
+    private TranspositionTable table;
+    private ChessAI ai;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = Positions.create(position);
+        table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        board.loadFen(PerftPosition.valueOf(position).getFen());
+        table.clear();
+        ai = new ChessAI(board.getTurn(), board, table);
+        ai.setTimeBudget(0);
+        ai.setMaxDepth(depth);
+    }
+
+    @Benchmark
+    public void playTurn() {
+        ai.playTurn();
+    }
+}
@@ -1,10 +1,23 @@
 package org.cis120.chess.ai;
 
+import org.cis120.chess.book.OpeningBook;
 import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
 import org.cis120.chess.logic.Piece;
+import org.cis120.chess.logic.Position;
 import org.cis120.chess.logic.Tile;
+import org.cis120.chess.tablebase.Tablebase;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements the chess AI and contains all the logic for it.
@@ -20,14 +33,354 @@ public class ChessAI {
      */
     private final Board board;
 
+    /**
+     * A copy of the board that the ai searches on. It is set to the board's position at the
+     * start of every search, so the search never changes the board that is played and painted.
+     */
+    private final Board searchBoard;
+
+    /**
+     * The transposition table that stores the results of positions that have been searched,
+     * shared by every searcher
+     */
+    private final TranspositionTable table;
+
+    /**
+     * If the transposition table is shared with other ais, which then start its new search
+     * generations instead of every search of the ai
+     */
+    private final boolean sharedTable;
+
+    /**
+     * The searcher that searches on the ai's copy of the board. It searches every move when the
+     * ai uses one thread.
+     */
+    private final Searcher searcher;
+
+    /**
+     * The searchers of the threads: the ai's own searcher, and a searcher with its own board
+     * for every other thread, which is set to the position being searched before each search.
+     * They are created when the number of threads is set and kept for every search.
+     */
+    private Searcher[] searchers;
+
+    /**
+     * The default time the ai can spend searching a move, in milliseconds
+     */
+    public static final long DEFAULT_TIME_BUDGET = 1000;
+
+    /**
+     * The deepest depth the ai searches to if it has time
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * The time in milliseconds and the number of nodes the ai can spend searching a move (0 if
+     * unlimited), and the deepest depth it searches to
+     */
+    private long timeBudget, nodeBudget;
+    private int maxDepth;
+
+    /**
+     * The number of threads the ai searches with, and the pool of those threads (null when the
+     * ai uses one thread)
+     */
+    private int threads;
+    private ForkJoinPool pool;
+
+    /**
+     * A boolean that is true if the extra threads run Lazy SMP helper searches instead of
+     * splitting the moves of the ai between them
+     */
+    private boolean lazySmp;
+
+    /**
+     * Booleans that switch the parts of the search that skip or shorten the search of moves
+     * that are unlikely to matter, all on by default: principal variation search, null move
+     * pruning, late move reductions and futility pruning
+     */
+    private boolean pvs, nullMove, lateMoveReductions, futility;
+
+    /**
+     * The time the current search started at (from System.nanoTime) and the number of positions
+     * every searcher has searched so far
+     */
+    private long startTime;
+    private final AtomicLong nodes;
+
+    /**
+     * A boolean that is set when the current search runs out of its budget or is cancelled.
+     * The iteration that was running is thrown away.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * The result of the search running in the background, which stops the search when it is
+     * cancelled, or null if the search was not started with {@link #searchAsync(Executor)}
+     */
+    private volatile CompletableFuture<Integer> task;
+
+    /**
+     * The reply the ai expects to its last move, from the best line of its last search, or
+     * Move.NONE if it does not expect one
+     */
+    private volatile int ponderMove;
+
+    /**
+     * A flag that is true while the search that is running is pondering, that is searching the
+     * position after the expected reply before the opponent played it, or null if the search
+     * is not pondering. The time and node budgets only apply once the reply is played.
+     */
+    private volatile AtomicBoolean pondering;
+
+    /**
+     * The flag of the last search started with {@link #ponderAsync(Executor)}
+     */
+    private AtomicBoolean lastPonder;
+
+    /**
+     * The listener that is told about the progress of every search, or null
+     */
+    private volatile SearchListener listener;
+
+    /**
+     * The opening book the ai plays from while the position is in it, or null, and the random
+     * numbers it picks between the book moves with
+     */
+    private volatile OpeningBook book;
+    private final Random random;
+
+    /**
+     * The endgame tablebase that scores positions with few pieces, or null
+     */
+    private volatile Tablebase tablebase;
+
+    /**
+     * The moves of the ai in the position being searched, and the score and number of moves
+     * after each of them at the depth being searched
+     */
+    private final int[] rootMoves, rootScores, rootNumMoves;
+
+    /**
+     * The moves of the opponent after the ai's best move, used to check the reply it expects
+     */
+    private final int[] replyMoves;
+
     /**
      * Constructor, initializes the private fields
      * @param white
      * @param board
      */
     public ChessAI(boolean white, Board board) {
+        this(white, board, new TranspositionTable(TranspositionTable.DEFAULT_SIZE), false);
+    }
+
+    /**
+     * Constructor for an ai that shares its transposition table with other ais, so many games
+     * can be searched with one table. The table stores scores for the ai's color, so it can only
+     * be shared by ais playing the same color. The searches of the ai do not start new
+     * generations of the table, since searches of unrelated games would keep aging each other's
+     * entries, so the owner of the table calls {@link TranspositionTable#newSearch()} instead.
+     * @param white if the ai plays white
+     * @param board the board of the game
+     * @param table the transposition table
+     */
+    public ChessAI(boolean white, Board board, TranspositionTable table) {
+        this(white, board, table, true);
+    }
+
+    /**
+     * Constructor, initializes the private fields
+     * @param white if the ai plays white
+     * @param board the board of the game
+     * @param table the transposition table
+     * @param sharedTable if the table is shared with other ais
+     */
+    private ChessAI(boolean white, Board board, TranspositionTable table, boolean sharedTable) {
         this.white = white;
         this.board = board;
+        this.table = table;
+        this.sharedTable = sharedTable;
+        searchBoard = board.copy();
+        searcher = new Searcher(this, searchBoard, table);
+        searchers = new Searcher[] {searcher};
+        timeBudget = DEFAULT_TIME_BUDGET;
+        maxDepth = MAX_DEPTH;
+        threads = 1;
+        pvs = true;
+        nullMove = true;
+        lateMoveReductions = true;
+        futility = true;
+        nodes = new AtomicLong();
+        rootMoves = new int[Searcher.MAX_MOVES];
+        rootScores = new int[Searcher.MAX_MOVES];
+        rootNumMoves = new int[Searcher.MAX_MOVES];
+        replyMoves = new int[Searcher.MAX_MOVES];
+        random = new Random();
+    }
+
+    /**
+     * Sets the time the ai can spend searching a move. The search stops after the deepest
+     * iteration it can finish in time.
+     * @param millis the time in milliseconds, or 0 for no limit
+     */
+    public void setTimeBudget(long millis) {
+        timeBudget = millis;
+    }
+
+    /**
+     * Sets the number of positions the ai can search for a move. The count is checked every 1024
+     * positions of each thread.
+     * @param nodes the number of positions, or 0 for no limit
+     */
+    public void setNodeBudget(long nodes) {
+        nodeBudget = nodes;
+    }
+
+    /**
+     * Sets the deepest depth the ai searches to, counting the ai's move as 1
+     * @param depth the depth, between 1 and {@link #MAX_DEPTH}
+     */
+    public void setMaxDepth(int depth) {
+        maxDepth = Math.max(1, Math.min(depth, MAX_DEPTH));
+    }
+
+    /**
+     * Sets the number of threads the ai searches with. With more than one thread, the moves of
+     * the ai are split between the threads, or the extra threads run Lazy SMP helpers (see
+     * {@link #setLazySmp(boolean)}). Each thread searches on its own copy of the board and they
+     * share the transposition table. With one thread (the default), the search is the same
+     * every time for the same position and budget.
+     * @param threads the number of threads, at least 1
+     */
+    public void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (threads != this.threads && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.threads = threads;
+        if (threads > 1 && pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        int created = searchers.length;
+        searchers = Arrays.copyOf(searchers, threads);
+        for (int i = created; i < threads; i++) {
+            searchers[i] = new Searcher(this, searchBoard.copy(), table);
+        }
+    }
+
+    /**
+     * Sets how the ai uses more than one thread. With Lazy SMP, one thread runs the normal
+     * search while every other thread runs the same iterative deepening search on its own copy
+     * of the board, starting one depth apart. The threads only share the transposition table,
+     * so the helpers fill it with results the main search then uses. Otherwise the moves of the
+     * ai are split between the threads.
+     * @param lazySmp true to use Lazy SMP helpers
+     */
+    public void setLazySmp(boolean lazySmp) {
+        this.lazySmp = lazySmp;
+    }
+
+    /**
+     * Switches principal variation search: every move after the first is searched with a zero
+     * window, which only proves it is not better than the best move so far, and is searched
+     * again with the full window if it is
+     * @param pvs true to use principal variation search
+     */
+    public void setPvs(boolean pvs) {
+        this.pvs = pvs;
+    }
+
+    /**
+     * Switches null move pruning: a position where the player to move is still too good for
+     * the other player after passing their turn, searched less deep, is cut off. It is never
+     * tried in check or when the player to move only has their king and pawns, where passing
+     * could be better than any move (zugzwang).
+     * @param nullMove true to use null move pruning
+     */
+    public void setNullMove(boolean nullMove) {
+        this.nullMove = nullMove;
+    }
+
+    /**
+     * Switches late move reductions: quiet moves that come late in the move order are searched
+     * less deep first, and only searched again at full depth if they turn out to be good
+     * @param lateMoveReductions true to use late move reductions
+     */
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    /**
+     * Switches futility pruning: one move from the leaves, quiet moves are skipped when the
+     * score of the position plus a margin still cannot reach the best score so far
+     * @param futility true to use futility pruning
+     */
+    public void setFutility(boolean futility) {
+        this.futility = futility;
+    }
+
+    /**
+     * @return if the search uses principal variation search
+     */
+    boolean usesPvs() {
+        return pvs;
+    }
+
+    /**
+     * @return if the search uses null move pruning
+     */
+    boolean usesNullMove() {
+        return nullMove;
+    }
+
+    /**
+     * @return if the search uses late move reductions
+     */
+    boolean usesLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    /**
+     * @return if the search uses futility pruning
+     */
+    boolean usesFutility() {
+        return futility;
+    }
+
+    /**
+     * Sets the listener that is told every time a search finishes a depth
+     * @param listener the listener, or null for none
+     */
+    public void setSearchListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the opening book. While the position is in the book the ai plays a book move
+     * instead of searching, picked at random by the weights of the moves.
+     * @param book the book, or null to always search
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Sets the endgame tablebase. Once few enough pieces are left the ai plays the move the
+     * tablebase scores best instead of searching, and the search scores the positions in the
+     * tablebase without searching them.
+     * @param tablebase the tablebase, or null for none
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * @return the endgame tablebase, or null
+     */
+    Tablebase getTablebase() {
+        return tablebase;
     }
 
     /**
@@ -39,7 +392,7 @@ public class ChessAI {
         while (true) {
             Piece piece = board.getPiece(x, y);
             if (piece != null && piece.getWhite() == white) {
-                LinkedList<Tile> validMoves = piece.getValidMoves();
+                List<Tile> validMoves = piece.getValidMoves();
                 if (validMoves.size() != 0) {
                     int choice = (int) (Math.random() * validMoves.size());
                     Tile target = validMoves.get(choice);
@@ -55,128 +408,405 @@ public class ChessAI {
 
     /**
      * Plays a move based on the best result from the minimax algorithm with heuristic based on
-     * pre-defined piece values, looking forward 3 steps. Uses another heuristic for tie breaking.
+     * pre-defined piece values. See {@link #search(Board)}.
      */
     public void playTurn() {
-        if (board.staleMate() || board.checkMate()) {
-            return;
+        task = null;
+        int move = search(board);
+        if (move != Move.NONE) {
+            board.playMove(move);
         }
-        Piece pieceToMove = null; // the piece to be moved
-        Tile target = null; // the target tile to move to
+    }
 
-        // the variables to be used for comparing move options
-        int best = Integer.MIN_VALUE; // the best result from the minimax algorithm
-        int bestNumMoves = 0; // the largest number of moves achieved associated to the best value
-        int bestPieceValue = Integer.MAX_VALUE; // the lowest piece value associated to best value
+    /**
+     * Searches for the ai's move in the board's current position on another thread. The
+     * position is copied before this returns, so the board can be changed while the search
+     * runs, and the move is not played. Cancelling the result stops the search.
+     * @param executor the executor to run the search on. Searches of the same ai run one at a
+     *                 time, so it should run its tasks in order on one thread.
+     * @return the result of the search, which is completed with the best move as a packed
+     * {@link Move}, or Move.NONE if the game is over
+     */
+    public CompletableFuture<Integer> searchAsync(Executor executor) {
+        return startSearch(executor, board.copy(), null);
+    }
 
-        LinkedList<Piece> pieces = getPieces(white);
-        for (Piece piece : pieces) {
-            LinkedList<Tile> possibleMoves = piece.getValidMoves();
-            for (Tile nextTile : possibleMoves) {
-                movePiece(piece.getX(), piece.getY(), nextTile.getX(), nextTile.getY());
-                int val = minimax(2, Integer.MIN_VALUE, Integer.MAX_VALUE, false);
-                int numMoves = board.calculateNumMoves(white);
-                board.undo();
-                if (Piece.isPawn(piece) && Math.abs(nextTile.getX() - piece.getX()) == 2) {
-                    numMoves += 1;
-                }
-                if (val > best || (val == best && (piece.getValue() < bestPieceValue ||
-                        (piece.getValue() == bestPieceValue && numMoves > bestNumMoves)))) {
-                    pieceToMove = piece;
-                    target = nextTile;
-                    best = val;
-                    bestPieceValue = piece.getValue();
-                    bestNumMoves = numMoves;
-                }
+    /**
+     * Starts pondering: searches the position after the reply the ai expects to its last move
+     * on another thread while the opponent is still thinking. If the opponent plays the
+     * expected reply, {@link #ponderHit()} turns the search into the search for the ai's next
+     * move, which then already has a head start. Otherwise the result should be cancelled,
+     * and only the entries it added to the transposition table are kept.
+     * @param executor the executor to run the search on, see {@link #searchAsync(Executor)}
+     * @return the result of the search, completed with the best move in the position after
+     * the expected reply, or null if the ai does not expect a reply
+     */
+    public CompletableFuture<Integer> ponderAsync(Executor executor) {
+        int move = ponderMove;
+        if (move == Move.NONE || board.getTurn() == white) {
+            return null;
+        }
+        Board position = board.copy();
+        try {
+            position.playMove(move);
+        } catch (IllegalArgumentException e) {
+            return null; // the board changed since the ai's last search
+        }
+        lastPonder = new AtomicBoolean(true);
+        return startSearch(executor, position, lastPonder);
+    }
+
+    /**
+     * @return the reply the ai expects to its last move as a packed {@link Move}, or Move.NONE
+     * if it does not expect one
+     */
+    public int getPonderMove() {
+        return ponderMove;
+    }
+
+    /**
+     * Tells the ai the opponent played the reply it is pondering on, so the search started by
+     * the last {@link #ponderAsync(Executor)} finishes like a normal search. The time spent
+     * pondering counts towards the time budget, so if the opponent took longer than the budget
+     * the search stops right away with the best move of the deepest depth it finished.
+     */
+    public void ponderHit() {
+        if (lastPonder != null) {
+            lastPonder.set(false);
+        }
+    }
+
+    /**
+     * Starts a search on another thread
+     * @param executor the executor to run the search on
+     * @param position the position to search, which is not used by anything else
+     * @param ponder the pondering flag of the search, or null if it is not pondering
+     * @return the result of the search
+     */
+    private CompletableFuture<Integer> startSearch(Executor executor, Board position,
+                                                  AtomicBoolean ponder) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return; // cancelled before it started
+            }
+            task = result;
+            pondering = ponder;
+            try {
+                result.complete(search(position));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                task = null;
+                pondering = null;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Finds the best move in a position. Plays a move from the opening book if the position is
+     * in it, or the best move by the endgame tablebase if every move leads into it. Otherwise
+     * uses iterative deepening: searches 1 step ahead, then 2 steps and so on until the time or
+     * node budget runs out or the max depth is reached, and returns the best move of the deepest
+     * search that finished. Each search starts with the best move of the one before, and the
+     * transposition table orders the rest of the previous best line. The search runs on the
+     * ai's own copy of the position.
+     * @param position the board whose position to search, with the ai to move
+     * @return the best move as a packed {@link Move}, or Move.NONE if the game is over
+     */
+    private int search(Board position) {
+        searchBoard.load(position);
+        ponderMove = Move.NONE;
+        if (searchBoard.staleMate() || searchBoard.checkMate()) {
+            return Move.NONE;
+        }
+        OpeningBook book = this.book;
+        if (book != null) {
+            int move = book.probe(searchBoard, random, rootMoves);
+            if (move != Move.NONE) {
+                return move;
             }
         }
-        movePiece(pieceToMove.getX(), pieceToMove.getY(), target.getX(), target.getY());
-
-    }
-
-    /**
-     * Recursive minimax algorithm with pruning used for calculating the best possible outcome
-     * after a certain number of steps. Goes through all possible moves at each step and tries to
-     * at each level, depending on whose turn it is at that level, to either maximize or minimize
-     * the score of the board. Uses pruning to reduce calculations.
-     * @param level the level of the minimax algorithm we are at, reduces by 1 for each level, and
-     *              when it reaches 0, the minimax algorithm will just calculate and return the
-     *              score of the board
-     * @param bestMin the largest score the AI has achieved so far
-     * @param bestMax the smallest score the non-AI player has achieved so far
-     * @param aiTurn a boolean representing if it is the AI's turn to make a move
-     * @return the highest/lowest possible board value depending on whose turn it is
-     */
-    private int minimax(int level, int bestMin, int bestMax, boolean aiTurn) {
-        if (board.staleMate()) {
-            //checks for stalemate edge case
-            return 0;
-        }
-        if (level == 0) {
-            return board.calculateScoreDifference(white);
-        }
-        int ret = aiTurn ? Integer.MIN_VALUE : Integer.MAX_VALUE;
-        LinkedList<Piece> pieces = getPieces(aiTurn == white);
-        for (Piece piece : pieces) {
-            LinkedList<Tile> possibleMoves = piece.getValidMoves();
-            for (Tile nextTile : possibleMoves) {
-                movePiece(piece.getX(), piece.getY(), nextTile.getX(), nextTile.getY());
-                int val = minimax(level - 1, bestMin, bestMax, !aiTurn);
-                board.undo();
-                if (aiTurn) {
-                    ret = Math.max(ret, val);
-                    bestMin = Math.max(bestMin, val);
-                } else {
-                    ret = Math.min(ret, val);
-                    bestMax = Math.min(bestMax, val);
-                }
-                if (bestMax <= bestMin) {
-                    return ret;
-                }
+        Tablebase tablebase = this.tablebase;
+        if (tablebase != null && Long.bitCount(searchBoard.getOccupied()) <= Tablebase.MAX_PIECES) {
+            int move = tablebaseMove(tablebase);
+            if (move != Move.NONE) {
+                return move;
+            }
+        }
+        if (!sharedTable) {
+            table.newSearch();
+        }
+        startTime = System.nanoTime();
+        nodes.set(0);
+        aborted = false;
+        Searcher[] searchers = loadSearchers();
+        Searcher[] helpers = new Searcher[0];
+        List<Future<Void>> helperResults = new ArrayList<>();
+        if (lazySmp) {
+            helpers = Arrays.copyOfRange(searchers, 1, searchers.length);
+            for (int i = 0; i < helpers.length; i++) {
+                Searcher helper = helpers[i];
+                // every other helper starts a depth ahead, so they spread over two depths
+                int firstDepth = 1 + (i & 1);
+                helperResults.add(pool.submit(() -> {
+                    helper.searchHelper(firstDepth, maxDepth);
+                    return null;
+                }));
+            }
+            searchers = new Searcher[] {searcher};
+        }
+
+        int[] moves = rootMoves;
+        int count = searchBoard.generateMoves(moves, 0);
+        searcher.getOrdering().sort(moves, count,
+                TranspositionTable.move(table.probe(searchBoard.getKey())), 0);
+        int bestMove = moves[0];
+        for (int depth = 1; depth <= maxDepth && count > 1; depth++) {
+            searchRoot(searchers, count, depth);
+            if (aborted) {
+                break; // keep the best move of the last finished depth
+            }
+            bestMove = bestRootMove(count);
+            // search the best move first at the next depth, keeping the order of the others
+            int index = 0;
+            while (moves[index] != bestMove) {
+                index++;
+            }
+            SearchListener listener = this.listener;
+            if (listener != null) {
+                listener.depthFinished(depth, rootScores[index], nodes.get(), bestMove);
+            }
+            System.arraycopy(moves, 0, moves, 1, index);
+            moves[0] = bestMove;
+            if (timeBudget > 0 && !isPondering() && elapsedMillis() * 2 > timeBudget) {
+                break; // the next depth would most likely not finish in time
             }
         }
-        //checks if it's the player's turn and the player has no moves
+        for (Searcher helper : helpers) {
+            helper.stop();
+        }
+        await(helperResults);
+        ponderMove = expectedReply(bestMove);
+        return bestMove;
+    }
+
+    /**
+     * Finds the move the tablebase scores best in the position being searched: the fastest win,
+     * or else a draw, or else the slowest loss
+     * @param tablebase the tablebase
+     * @return the move, or Move.NONE if a position after one of the moves is not in the tablebase
+     */
+    private int tablebaseMove(Tablebase tablebase) {
+        int[] moves = rootMoves;
+        int count = searchBoard.generateMoves(moves, 0);
+        int bestMove = Move.NONE;
+        int best = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            searchBoard.makeMove(moves[i]);
+            int score = tablebase.probe(searchBoard, searcher.getTablebaseBuffers());
+            searchBoard.unmakeMove();
+            if (score == Tablebase.UNKNOWN) {
+                return Move.NONE;
+            }
+            if (-score > best) {
+                best = -score;
+                bestMove = moves[i];
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Finds the reply the ai expects to a move, which is the next move of the best line in the
+     * transposition table
+     * @param move the move of the ai in the position that was searched
+     * @return the reply, or Move.NONE if the table has none
+     */
+    private int expectedReply(int move) {
+        searchBoard.makeMove(move);
+        int reply = TranspositionTable.move(table.probe(searchBoard.getKey()));
+        int[] moves = replyMoves;
+        int count = reply == Move.NONE ? 0 : searchBoard.generateMoves(moves, 0);
+        int ret = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == reply) {
+                ret = reply; // the entry could belong to another position with the same index
+            }
+        }
+        searchBoard.unmakeMove();
         return ret;
     }
 
     /**
-     * Gets all the pieces that is associated with the input parameter
-     * @param white a boolean that is true if we are getting all white pieces and false if we are
-     *              getting all black pieces
-     * @return a Linkedlist of all the pieces associated with the input parameter
+     * Waits for tasks of the pool to finish
+     * @param futures the results of the tasks
      */
-    private LinkedList<Piece> getPieces(boolean white) {
-        LinkedList<Piece> ret = new LinkedList<>();
-        for (int i = 0; i < 8; i++) {
-            int x = white ? 7 - i : i;
-            for (int j = 3; j >= 0; j--) {
-                Piece piece = board.getPiece(x, j);
-                if (piece != null && piece.getWhite() == white) {
-                    ret.add(piece);
-                }
-                piece = board.getPiece(x, 7 - j);
-                if (piece != null && piece.getWhite() == white) {
-                    ret.add(piece);
-                }
+    private void await(List<Future<Void>> futures) {
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            aborted = true;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Gets the searchers ready for a search: sets the board of every searcher other than the
+     * ai's own to the position being searched, and starts a new search of their move ordering
+     * @return the searchers
+     */
+    private Searcher[] loadSearchers() {
+        Searcher[] ret = searchers;
+        for (int i = 0; i < ret.length; i++) {
+            if (i > 0) {
+                ret[i].getBoard().load(searchBoard);
+            }
+            ret[i].getOrdering().newSearch();
         }
         return ret;
     }
 
     /**
-     * Simulates moving the piece
-     * @param x0 the x coordinate of where the piece starts
-     * @param y0 the y coordinate of where the peice starts
-     * @param x1 the x coordinate of where the piece is moving to
-     * @param y1 the y coordinate of where the piece is moving to
+     * Searches each move of the ai to a depth, storing the score and number of moves after each
+     * move. The first move is searched on its own to get a good bound, and with more than one
+     * thread the rest are then split between the searchers, each taking the next move that has
+     * not been searched when it finishes one. The best score so far is shared between them.
+     * @param searchers the searchers to search with
+     * @param count the number of moves, which are in the order to search them
+     * @param depth the depth to search to, counting the ai's move as 1
+     */
+    private void searchRoot(Searcher[] searchers, int count, int depth) {
+        AtomicInteger best = new AtomicInteger(Integer.MIN_VALUE);
+        searchRootMove(searcher, 0, depth, best);
+        if (searchers.length == 1) {
+            for (int i = 1; i < count; i++) {
+                searchRootMove(searcher, i, depth, best);
+            }
+        } else {
+            AtomicInteger next = new AtomicInteger(1);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Searcher s : searchers) {
+                tasks.add(() -> {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        searchRootMove(s, i, depth, best);
+                    }
+                    return null;
+                });
+            }
+            await(pool.invokeAll(tasks));
+        }
+        for (Searcher s : searchers) {
+            s.flushNodes();
+        }
+    }
+
+    /**
+     * Searches one move of the ai to a depth
+     * @param s the searcher to search with
+     * @param i the index of the move in the moves of the ai
+     * @param depth the depth to search to, counting the ai's move as 1
+     * @param best the best score of the moves searched so far
      */
-    private void movePiece(int x0, int y0, int x1, int y1) {
-        board.playTurn(x0, y0);
-        if (board.playTurn(x1, y1)) {
-            board.promote(0);
+    private void searchRootMove(Searcher s, int i, int depth, AtomicInteger best) {
+        Board searchBoard = s.getBoard();
+        int bestScore = best.get();
+        // moves that can only tie the best move are still searched exactly for tie breaking
+        int bestMin = bestScore == Integer.MIN_VALUE ? bestScore : bestScore - 1;
+        searchBoard.makeMove(rootMoves[i]);
+        int val = s.minimax(depth - 1, bestMin, Integer.MAX_VALUE, false, 1);
+        rootNumMoves[i] = searchBoard.calculateNumMoves(white);
+        searchBoard.unmakeMove();
+        rootScores[i] = val;
+        if (!aborted) {
+            best.accumulateAndGet(val, Math::max);
         }
     }
 
+    /**
+     * Finds the best move of the ai from the scores of the last search. Uses another heuristic
+     * for tie breaking.
+     * @param count the number of moves
+     * @return the best move
+     */
+    private int bestRootMove(int count) {
+        int bestMove = Move.NONE;
+        // the variables to be used for comparing move options
+        int best = Integer.MIN_VALUE; // the best result from the minimax algorithm
+        int bestNumMoves = 0; // the largest number of moves achieved associated to the best value
+        int bestPieceValue = Integer.MAX_VALUE; // the lowest piece value associated to best value
+
+        for (int i = 0; i < count; i++) {
+            int move = rootMoves[i];
+            int from = Move.from(move);
+            int type = Position.type(searchBoard.pieceAt(from));
+            int pieceValue = Position.VALUES[type];
+            int val = rootScores[i];
+            int numMoves = rootNumMoves[i];
+            if (type == Position.PAWN && Math.abs(Move.to(move) - from) == 16) {
+                numMoves += 1;
+            }
+            if (val > best || (val == best && (pieceValue < bestPieceValue ||
+                    (pieceValue == bestPieceValue && numMoves > bestNumMoves)))) {
+                bestMove = move;
+                best = val;
+                bestPieceValue = pieceValue;
+                bestNumMoves = numMoves;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Adds positions searched by a searcher to the count, and checks if the search is out of its
+     * time or node budget or was cancelled
+     * @param count the number of positions
+     */
+    void addNodes(int count) {
+        long total = nodes.addAndGet(count);
+        CompletableFuture<Integer> task = this.task;
+        if (!isPondering() && (nodeBudget > 0 && total >= nodeBudget
+                || timeBudget > 0 && elapsedMillis() >= timeBudget)
+                || task != null && task.isCancelled()) {
+            aborted = true;
+        }
+    }
+
+    /**
+     * @return if the current search ran out of its budget or was cancelled
+     */
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return if the current search is pondering, so it has no time or node budget yet
+     */
+    private boolean isPondering() {
+        AtomicBoolean pondering = this.pondering;
+        return pondering != null && pondering.get();
+    }
+
+    /**
+     * @return the time since the current search started, in milliseconds
+     */
+    private long elapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * @return the number of positions searched by the current or last search, counted by every
+     * thread
+     */
+    public long getNodes() {
+        return nodes.get();
+    }
+
     /**
      * @return a boolean value that is true if the ai is playing white and false otherwise
      */
@@ -0,0 +1,193 @@
+package org.cis120.chess.ai;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+import org.cis120.chess.logic.Position;
+
+import java.util.Arrays;
+
+/**
+ * Orders the moves of a position so the moves most likely to be best are searched first, which
+ * lets alpha-beta pruning cut off the rest of the moves sooner. The order is: the move from the
+ * transposition table, captures with the most valuable victim and then the least valuable
+ * attacker first (MVV-LVA), the killer moves of the ply (quiet moves that caused a cutoff at the
+ * same ply elsewhere in the tree), the other quiet moves by how often they caused cutoffs
+ * before (history heuristic), and last the captures that lose material in the exchange on the
+ * square (found by static exchange evaluation).
+ */
+class MoveOrdering {
+
+    /**
+     * The score ranges of each kind of move. Quiet moves are scored by their history, which is
+     * kept below KILLER_SCORE.
+     */
+    private static final int HASH_SCORE = Integer.MAX_VALUE;
+    private static final int CAPTURE_SCORE = 1 << 28;
+    private static final int KILLER_SCORE = 1 << 27;
+    private static final int HISTORY_LIMIT = 1 << 20;
+    private static final int LOSING_CAPTURE_SCORE = -(1 << 28);
+
+    /**
+     * The board whose moves are being ordered
+     */
+    private final Board board;
+
+    /**
+     * The two most recent killer moves of each ply
+     */
+    private final int[][] killers;
+
+    /**
+     * How much each quiet move, indexed by [from][to] square, has caused cutoffs
+     */
+    private final int[][] history;
+
+    /**
+     * The scores of the moves being sorted at each ply, allocated once so sorting does not
+     * allocate
+     */
+    private final int[][] scores;
+
+    /**
+     * Constructor, initializes the tables
+     * @param board the board whose moves are being ordered
+     * @param maxPly the deepest ply that moves are sorted at
+     * @param maxMoves the most moves that are sorted at once
+     */
+    MoveOrdering(Board board, int maxPly, int maxMoves) {
+        this.board = board;
+        killers = new int[maxPly + 1][2];
+        history = new int[64][64];
+        scores = new int[maxPly + 1][maxMoves];
+    }
+
+    /**
+     * Prepares for a new search. Clears the killer moves, which belong to the old position,
+     * and halves the history so older cutoffs count less.
+     */
+    void newSearch() {
+        for (int[] killer : killers) {
+            Arrays.fill(killer, Move.NONE);
+        }
+        for (int[] row : history) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] /= 2;
+            }
+        }
+    }
+
+    /**
+     * Sorts moves from most to least promising
+     * @param moves the moves to sort
+     * @param count the number of moves at the start of the array to sort
+     * @param hashMove the best move from the transposition table, or Move.NONE
+     * @param ply the distance from the root of the search
+     * @return the number of moves before the captures that lose material, which are sorted last
+     * unless one of them is the hash move
+     */
+    int sort(int[] moves, int count, int hashMove, int ply) {
+        int[] scores = this.scores[ply];
+        for (int i = 0; i < count; i++) {
+            scores[i] = score(moves[i], hashMove, ply);
+        }
+        // insertion sort, since move lists are short and often nearly sorted
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+        int ret = count;
+        while (ret > 0 && scores[ret - 1] < LOSING_CAPTURE_SCORE + CAPTURE_SCORE) {
+            ret--;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the score of a move, higher scores are searched first
+     */
+    private int score(int move, int hashMove, int ply) {
+        if (move == hashMove) {
+            return HASH_SCORE;
+        }
+        if (isCapture(move)) {
+            int score = victimValue(move) * 1024 - valueAt(Move.from(move));
+            return isLosingCapture(move) ? LOSING_CAPTURE_SCORE + score : CAPTURE_SCORE + score;
+        }
+        if (move == killers[ply][0]) {
+            return KILLER_SCORE + 1;
+        } else if (move == killers[ply][1]) {
+            return KILLER_SCORE;
+        }
+        return history[Move.from(move)][Move.to(move)];
+    }
+
+    /**
+     * Records a move that caused a cutoff. Quiet moves become the first killer move of the ply
+     * and gain history in proportion to the depth that was cut off.
+     * @param move the move
+     * @param depth the remaining depth of the position the cutoff happened in
+     * @param ply the distance from the root of the search
+     */
+    void addCutoff(int move, int depth, int ply) {
+        if (isCapture(move)) {
+            return;
+        }
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] row = history[Move.from(move)];
+        row[Move.to(move)] += depth * depth;
+        if (row[Move.to(move)] > HISTORY_LIMIT) {
+            for (int[] other : history) {
+                for (int i = 0; i < other.length; i++) {
+                    other[i] /= 2;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return if the move captures a piece, including en Passant
+     */
+    boolean isCapture(int move) {
+        return board.pieceAt(Move.to(move)) != Position.EMPTY
+                || Move.flag(move) == Move.EN_PASSANT;
+    }
+
+    /**
+     * Checks if a capture loses material in the exchange on its square. Only captures with a
+     * piece worth more than the one it captures can lose material, so the exchange is only
+     * evaluated for those.
+     * @param move a capture
+     * @return if the capture loses material
+     */
+    boolean isLosingCapture(int move) {
+        return valueAt(Move.from(move)) > victimValue(move) && board.staticExchange(move) < 0;
+    }
+
+    /**
+     * @return the value of the piece a capture captures
+     */
+    int victimValue(int move) {
+        if (Move.flag(move) == Move.EN_PASSANT) {
+            return Position.VALUES[Position.PAWN];
+        }
+        return valueAt(Move.to(move));
+    }
+
+    /**
+     * @return the value of the piece on the square, which has to be occupied
+     */
+    private int valueAt(int sq) {
+        return Position.VALUES[Position.type(board.pieceAt(sq))];
+    }
+}
@@ -0,0 +1,19 @@
+package org.cis120.chess.ai;
+
+/**
+ * Listens to the progress of a {@link ChessAI} search. It is called on the thread that runs the
+ * search, so a listener that updates Swing components has to pass the update on to the event
+ * dispatch thread.
+ */
+public interface SearchListener {
+
+    /**
+     * Called every time the search finishes a depth
+     * @param depth the depth that was finished, counting the ai's move as 1
+     * @param score the score of the best move at that depth, for the ai
+     * @param nodes the number of positions searched so far
+     * @param bestMove the best move at that depth, as a packed {@link
+     *                 org.cis120.chess.logic.Move}
+     */
+    void depthFinished(int depth, int score, long nodes, int bestMove);
+}
@@ -0,0 +1,460 @@
+package org.cis120.chess.ai;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+import org.cis120.chess.tablebase.Tablebase;
+
+/**
+ * The alpha-beta search of one thread. Each searcher makes moves on its own Board and has its
+ * own move ordering and move buffers, and shares the transposition table and the search limits
+ * of its {@link ChessAI}, so several searchers can search the same position at once. A searcher
+ * can also run as a Lazy SMP helper, searching the whole position only to fill the shared
+ * transposition table for the main search.
+ */
+class Searcher {
+
+    /**
+     * The most moves the search can be ahead of the root, including the quiescence search, and
+     * the most moves a position can have
+     */
+    static final int MAX_PLY = 128;
+    static final int MAX_MOVES = 256;
+
+    /**
+     * The score of being checkmated right away, for the player who mates. A mate in n moves from
+     * the position the search started from scores MATE - n, so shorter mates score higher and
+     * longer losses lower.
+     */
+    static final int MATE = 1000000;
+
+    /**
+     * The margin added to the value of a captured piece when deciding if a capture in the
+     * quiescence search could possibly raise the score enough to matter (delta pruning)
+     */
+    private static final int DELTA_MARGIN = 20;
+
+    /**
+     * The depth null move searches are reduced by, and the shallowest depth they are tried at
+     */
+    private static final int NULL_MOVE_REDUCTION = 2;
+    private static final int NULL_MOVE_MIN_LEVEL = 3;
+
+    /**
+     * The shallowest depth and the first index in the move order that quiet moves are reduced
+     * at, and the index after which they are reduced by one more
+     */
+    private static final int LMR_MIN_LEVEL = 3;
+    private static final int LMR_MIN_INDEX = 3;
+    private static final int LMR_DEEP_INDEX = 8;
+
+    /**
+     * The most a quiet move is expected to raise the score of a position, used by futility
+     * pruning one move from the leaves
+     */
+    private static final int FUTILITY_MARGIN = 25;
+
+    /**
+     * The number of positions searched between reports to the ai, which also checks its time
+     * and node budget
+     */
+    private static final int NODE_BATCH = 1024;
+
+    /**
+     * The ai this searcher searches for
+     */
+    private final ChessAI ai;
+
+    /**
+     * A boolean representing if the ai is playing white or not
+     */
+    private final boolean white;
+
+    /**
+     * The Board that this searcher makes its moves on
+     */
+    private final Board board;
+
+    /**
+     * The transposition table shared by every searcher of the ai
+     */
+    private final TranspositionTable table;
+
+    /**
+     * The move ordering that decides which moves are searched first
+     */
+    private final MoveOrdering ordering;
+
+    /**
+     * The moves of the position being searched at each ply, allocated once so the search does
+     * not allocate
+     */
+    private final int[][] moveBuffers;
+
+    /**
+     * The scratch arrays of the tablebase probes
+     */
+    private final Tablebase.Buffers tablebaseBuffers = new Tablebase.Buffers();
+
+    /**
+     * The number of positions searched that have not been reported to the ai yet
+     */
+    private int nodes;
+
+    /**
+     * A boolean that is set to stop a helper search
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor, initializes the private fields
+     * @param ai the ai to search for
+     * @param board the board to make moves on, which no other searcher uses
+     * @param table the transposition table to share
+     */
+    Searcher(ChessAI ai, Board board, TranspositionTable table) {
+        this.ai = ai;
+        this.white = ai.getWhite();
+        this.board = board;
+        this.table = table;
+        ordering = new MoveOrdering(board, MAX_PLY, MAX_MOVES);
+        moveBuffers = new int[MAX_PLY][MAX_MOVES];
+    }
+
+    /**
+     * @return the board this searcher makes its moves on
+     */
+    Board getBoard() {
+        return board;
+    }
+
+    /**
+     * @return the move ordering of this searcher
+     */
+    MoveOrdering getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * @return the scratch arrays of the tablebase probes on this searcher's thread
+     */
+    Tablebase.Buffers getTablebaseBuffers() {
+        return tablebaseBuffers;
+    }
+
+    /**
+     * Stops the search of this searcher, which the search checks at every position
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return if the search has to stop, because it was stopped or the ai's search ran out of
+     * its budget
+     */
+    private boolean isStopped() {
+        return stopped || ai.isAborted();
+    }
+
+    /**
+     * Searches the board's position with iterative deepening as a Lazy SMP helper. The results
+     * only go into the shared transposition table, where the main search finds them. Runs until
+     * the max depth or until {@link #stop()} is called or the ai's search runs out of its
+     * budget.
+     * @param firstDepth the depth to start at, staggered between helpers so they do not all
+     *                   search the same depth at the same time
+     * @param maxDepth the deepest depth to search to
+     */
+    void searchHelper(int firstDepth, int maxDepth) {
+        stopped = false;
+        ordering.newSearch();
+        int[] moves = moveBuffers[0];
+        int count = board.generateMoves(moves, 0);
+        ordering.sort(moves, count, TranspositionTable.move(table.probe(board.getKey())), 0);
+        for (int depth = firstDepth; depth <= maxDepth && !isStopped(); depth++) {
+            int best = Integer.MIN_VALUE;
+            int bestIndex = 0;
+            for (int i = 0; i < count && !isStopped(); i++) {
+                board.makeMove(moves[i]);
+                int bestMin = best == Integer.MIN_VALUE ? best : best - 1;
+                int val = minimax(depth - 1, bestMin, Integer.MAX_VALUE, false, 1);
+                board.unmakeMove();
+                if (val > best) {
+                    best = val;
+                    bestIndex = i;
+                }
+            }
+            // search the best move first at the next depth, like the main search
+            int bestMove = moves[bestIndex];
+            System.arraycopy(moves, 0, moves, 1, bestIndex);
+            moves[0] = bestMove;
+        }
+        flushNodes();
+    }
+
+    /**
+     * Counts a searched position, reporting a batch of positions to the ai so it can check its
+     * time and node budget
+     */
+    private void countNode() {
+        if (++nodes == NODE_BATCH) {
+            flushNodes();
+        }
+    }
+
+    /**
+     * Reports the positions searched since the last report to the ai
+     */
+    void flushNodes() {
+        ai.addNodes(nodes);
+        nodes = 0;
+    }
+
+    /**
+     * Recursive minimax algorithm with pruning used for calculating the best possible outcome
+     * after a certain number of steps. Goes through all possible moves at each step and tries to
+     * at each level, depending on whose turn it is at that level, to either maximize or minimize
+     * the score of the board. Uses pruning to reduce calculations. Looks up each position in the
+     * transposition table first, returning the stored score if it is deep enough to decide the
+     * position. Positions in the endgame tablebase, if the ai has one, are scored by it without
+     * searching. Searches the moves in the order given by {@link MoveOrdering}. Moves that are
+     * unlikely to matter are searched with a zero window or less deep, or skipped, as switched
+     * on in the ai (see {@link ChessAI#setPvs(boolean)}).
+     * @param level the level of the minimax algorithm we are at, reduces by 1 for each level, and
+     *              when it reaches 0, the minimax algorithm will just calculate and return the
+     *              score of the board
+     * @param bestMin the largest score the AI has achieved so far
+     * @param bestMax the smallest score the non-AI player has achieved so far
+     * @param aiTurn a boolean representing if it is the AI's turn to make a move
+     * @param ply the number of moves made since the position the search started from
+     * @return the highest/lowest possible board value depending on whose turn it is
+     */
+    int minimax(int level, int bestMin, int bestMax, boolean aiTurn, int ply) {
+        countNode();
+        if (isStopped()) {
+            return 0;
+        }
+        Tablebase tablebase = ai.getTablebase();
+        if (tablebase != null && Long.bitCount(board.getOccupied()) <= Tablebase.MAX_PIECES) {
+            int score = tablebase.probe(board, tablebaseBuffers);
+            if (score != Tablebase.UNKNOWN) {
+                // count the mate from the position the search started from
+                score = score > 0 ? score - ply : score < 0 ? score + ply : 0;
+                return board.getTurn() == white ? score : -score;
+            }
+        }
+        if (level == 0) {
+            return quiescence(bestMin, bestMax, aiTurn, ply);
+        }
+        long key = board.getKey();
+        long entry = table.probe(key);
+        if (entry != 0 && TranspositionTable.depth(entry) >= level) {
+            int score = TranspositionTable.score(entry, ply);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER_BOUND && score >= bestMax
+                    || bound == TranspositionTable.UPPER_BOUND && score <= bestMin) {
+                return score;
+            }
+        }
+
+        boolean checked = board.isChecked();
+        if (ai.usesNullMove() && level >= NULL_MOVE_MIN_LEVEL && !checked
+                && board.getLastMove() != Move.NONE // never two null moves in a row
+                && board.hasNonPawnMaterial(board.getTurn())
+                && (aiTurn ? bestMax != Integer.MAX_VALUE : bestMin != Integer.MIN_VALUE)) {
+            // if the player to move is still too good after passing, a real move is too
+            board.makeNullMove();
+            int val = aiTurn
+                    ? minimax(level - 1 - NULL_MOVE_REDUCTION, bestMax - 1, bestMax, false, ply + 1)
+                    : minimax(level - 1 - NULL_MOVE_REDUCTION, bestMin, bestMin + 1, true, ply + 1);
+            board.unmakeMove();
+            if (isStopped()) {
+                return 0;
+            }
+            if (aiTurn ? val >= bestMax : val <= bestMin) {
+                return aiTurn ? bestMax : bestMin;
+            }
+        }
+
+        // one move from the leaves, quiet moves cannot change a score that is far enough away
+        boolean futile = false;
+        int futileScore = 0;
+        if (ai.usesFutility() && level == 1 && !checked) {
+            int score = board.calculateScoreDifference(white);
+            futileScore = aiTurn ? score + FUTILITY_MARGIN : score - FUTILITY_MARGIN;
+            futile = aiTurn ? futileScore <= bestMin : futileScore >= bestMax;
+        }
+
+        int originalMin = bestMin;
+        int originalMax = bestMax;
+        int ret = aiTurn ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int bestMove = Move.NONE;
+        int[] moves = moveBuffers[ply];
+        int count = board.generateMoves(moves, 0);
+        if (count == 0) {
+            return checked ? mateScore(aiTurn, ply) : 0; // checkmate or stalemate
+        }
+        ordering.sort(moves, count, TranspositionTable.move(entry), ply);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            boolean late = ai.usesLateMoveReductions() && !checked && level >= LMR_MIN_LEVEL
+                    && i >= LMR_MIN_INDEX;
+            // quiet moves that do not give check can be pruned or reduced
+            boolean quiet = (futile || late) && !ordering.isCapture(move)
+                    && Move.promotion(move) == 0;
+            board.makeMove(move);
+            quiet = quiet && !board.isChecked();
+            if (futile && quiet) {
+                board.unmakeMove();
+                ret = aiTurn ? Math.max(ret, futileScore) : Math.min(ret, futileScore);
+                continue;
+            }
+            int reduction = 0;
+            if (late && quiet) {
+                reduction = i >= LMR_DEEP_INDEX && level > LMR_MIN_LEVEL ? 2 : 1;
+            }
+            int val;
+            if (i == 0 || reduction == 0 && !ai.usesPvs()) {
+                val = minimax(level - 1, bestMin, bestMax, !aiTurn, ply + 1);
+            } else {
+                // first only prove the move is no better than the best move so far
+                int zeroMin = aiTurn ? bestMin : bestMax - 1;
+                int zeroMax = aiTurn ? bestMin + 1 : bestMax;
+                val = minimax(level - 1 - reduction, zeroMin, zeroMax, !aiTurn, ply + 1);
+                boolean better = aiTurn ? val > bestMin : val < bestMax;
+                if (better && reduction > 0 && ai.usesPvs()) {
+                    val = minimax(level - 1, zeroMin, zeroMax, !aiTurn, ply + 1);
+                    better = aiTurn ? val > bestMin : val < bestMax;
+                }
+                if (better && (reduction > 0 && !ai.usesPvs() || val > bestMin && val < bestMax)) {
+                    val = minimax(level - 1, bestMin, bestMax, !aiTurn, ply + 1);
+                }
+            }
+            board.unmakeMove();
+            if (isStopped()) {
+                return 0; // the result is incomplete, so it is not stored
+            }
+            if (aiTurn ? val > ret : val < ret) {
+                ret = val;
+                bestMove = move;
+            }
+            if (aiTurn) {
+                bestMin = Math.max(bestMin, val);
+            } else {
+                bestMax = Math.min(bestMax, val);
+            }
+            if (bestMax <= bestMin) {
+                ordering.addCutoff(move, level, ply);
+                break;
+            }
+        }
+
+        int bound = TranspositionTable.EXACT;
+        if (ret <= originalMin) {
+            bound = TranspositionTable.UPPER_BOUND;
+        } else if (ret >= originalMax) {
+            bound = TranspositionTable.LOWER_BOUND;
+        }
+        table.store(key, level, bound, ret, bestMove, ply);
+        return ret;
+    }
+
+    /**
+     * Searches only captures from a leaf of the minimax search until the position is quiet, so
+     * the score is not taken in the middle of an exchange. The player to move can also stop
+     * capturing and keep the current score (stand pat), so captures only count when they
+     * improve on it. Captures that could not raise the score past the bound even after winning
+     * the captured piece are skipped (delta pruning), and so are captures that lose material in
+     * the exchange on the square. Stops at the deepest ply there are move buffers for.
+     * @param bestMin the largest score the AI has achieved so far
+     * @param bestMax the smallest score the non-AI player has achieved so far
+     * @param aiTurn a boolean representing if it is the AI's turn to make a move
+     * @param ply the number of moves made since the position the search started from
+     * @return the highest/lowest possible board value depending on whose turn it is
+     */
+    private int quiescence(int bestMin, int bestMax, boolean aiTurn, int ply) {
+        countNode();
+        if (isStopped()) {
+            return 0;
+        }
+        int[] moves = moveBuffers[ply];
+        int total = -1;
+        if (board.isChecked()) {
+            // a mate has to be found before standing pat
+            total = board.generateMoves(moves, 0);
+            if (total == 0) {
+                return mateScore(aiTurn, ply);
+            }
+        }
+        int standPat = board.calculateScoreDifference(white);
+        if ((aiTurn ? standPat >= bestMax : standPat <= bestMin) || ply == MAX_PLY - 1) {
+            return standPat;
+        }
+        if (total < 0) {
+            total = board.generateMoves(moves, 0);
+            if (total == 0) {
+                return 0; // stalemate
+            }
+        }
+        if (aiTurn) {
+            bestMin = Math.max(bestMin, standPat);
+        } else {
+            bestMax = Math.min(bestMax, standPat);
+        }
+
+        int ret = standPat;
+        // the captures that lose material are sorted last and not searched
+        int count = ordering.sort(moves, findCaptures(moves, total), Move.NONE, ply);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int gain = ordering.victimValue(move) + DELTA_MARGIN;
+            if (Move.promotion(move) == 0
+                    && (aiTurn ? standPat + gain <= bestMin : standPat - gain >= bestMax)) {
+                continue;
+            }
+            board.makeMove(move);
+            int val = quiescence(bestMin, bestMax, !aiTurn, ply + 1);
+            board.unmakeMove();
+            if (isStopped()) {
+                return 0;
+            }
+            if (aiTurn) {
+                ret = Math.max(ret, val);
+                bestMin = Math.max(bestMin, val);
+            } else {
+                ret = Math.min(ret, val);
+                bestMax = Math.min(bestMax, val);
+            }
+            if (bestMax <= bestMin) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the score of the player to move being checkmated, for the ai
+     * @param aiTurn if it is the ai's turn
+     * @param ply the number of moves made since the position the search started from
+     */
+    private static int mateScore(boolean aiTurn, int ply) {
+        return aiTurn ? -(MATE - ply) : MATE - ply;
+    }
+
+    /**
+     * Keeps only the moves that capture a piece of the valid moves of the player to move
+     * @param moves the valid moves, which the captures are moved to the front of
+     * @param total the number of valid moves
+     * @return the number of captures
+     */
+    private int findCaptures(int[] moves, int total) {
+        int count = 0;
+        for (int i = 0; i < total; i++) {
+            if (ordering.isCapture(moves[i])) {
+                moves[count++] = moves[i];
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,190 @@
+package org.cis120.chess.ai;
+
+import org.cis120.chess.tablebase.Tablebase;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size hash table of search results keyed by the Zobrist key of the position. Lets the
+ * search reuse the result of a position it reaches again through a different move order, and
+ * remembers the best move of a position to try first next time.
+ *
+ * The table has a power-of-two number of entries grouped into buckets of two. Each entry is a
+ * key and a data long that packs the best move (bits 0-15), the depth (bits 16-23), the bound
+ * type (bits 24-25), the search generation (bits 26-31) and the score (bits 32-63). A new result
+ * replaces the entry of the same position, or else the entry in its bucket that is shallowest
+ * after penalizing entries from older searches.
+ *
+ * Wins and losses that count the moves to mate (see {@link #WIN_THRESHOLD}) are scored by the
+ * search from the position it started from, but are stored counted from the position of the
+ * entry, so an entry stays right when the position is reached after a different number of moves.
+ *
+ * The table can be shared by searchers on several threads without locking. Each entry stores
+ * its key xored with its data, so an entry whose key and data were written by two different
+ * stores at the same time (or a torn long) does not match the key it is probed with and is
+ * treated as a miss.
+ */
+public class TranspositionTable {
+
+    /**
+     * The bound types. An exact score is the true minimax value, a lower bound means the value
+     * is at least the score and an upper bound means it is at most the score.
+     */
+    public static final int EXACT = 1, LOWER_BOUND = 2, UPPER_BOUND = 3;
+
+    /**
+     * The smallest size of a score that is a win or a loss counting the moves to mate, below the
+     * scores of the mates found by the search and the tablebase wins, and far above any
+     * evaluation
+     */
+    static final int WIN_THRESHOLD = Tablebase.WIN_SCORE - 1000;
+
+    /**
+     * The default number of entries, 2^20 entries (16 MB)
+     */
+    public static final int DEFAULT_SIZE = 1 << 20;
+
+    /**
+     * The key xored with the data, and the data of each entry
+     */
+    private final long[] keys;
+    private final long[] data;
+
+    /**
+     * The index mask of the first entry of a bucket
+     */
+    private final int mask;
+
+    /**
+     * The current search generation, stored in each entry to tell which entries are stale
+     */
+    private volatile int generation;
+
+    /**
+     * Constructor, creates an empty table
+     * @param size the number of entries, rounded down to a power of two (at least 2)
+     */
+    public TranspositionTable(int size) {
+        size = Integer.highestOneBit(Math.max(size, 2));
+        keys = new long[size];
+        data = new long[size];
+        mask = size - 2;
+    }
+
+    /**
+     * Starts a new search generation. Entries from earlier searches stay usable but are
+     * replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 63;
+    }
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Looks up a position
+     * @param key the Zobrist key of the position
+     * @return the packed data of the entry, or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        int index = (int) key & mask;
+        for (int i = index; i <= index + 1; i++) {
+            long entry = data[i];
+            if (entry != 0 && (keys[i] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position
+     * @param key the Zobrist key of the position
+     * @param depth the depth the position was searched to
+     * @param bound the bound type of the score
+     * @param score the score of the position
+     * @param move the best move found, or Move.NONE
+     * @param ply the number of moves made since the position the search started from
+     */
+    public void store(long key, int depth, int bound, int score, int move, int ply) {
+        if (score >= WIN_THRESHOLD) {
+            score += ply;
+        } else if (score <= -WIN_THRESHOLD) {
+            score -= ply;
+        }
+        int index = (int) key & mask;
+        long first = data[index];
+        long second = data[index + 1];
+        int replace;
+        long old;
+        if (first == 0 || (keys[index] ^ first) == key) {
+            replace = index;
+            old = first;
+        } else if (second == 0 || (keys[index + 1] ^ second) == key) {
+            replace = index + 1;
+            old = second;
+        } else {
+            replace = worth(first) <= worth(second) ? index : index + 1;
+            old = 0;
+        }
+        if (move == 0 && old != 0) {
+            move = move(old); // keep the best move of a previous search
+        }
+        long entry = (move & 0xFFFFL) | (long) Math.min(depth, 255) << 16
+                | (long) bound << 24 | (long) generation << 26 | (long) score << 32;
+        data[replace] = entry;
+        keys[replace] = key ^ entry;
+    }
+
+    /**
+     * @return how much an entry is worth keeping, its depth minus a penalty for its age
+     */
+    private int worth(long entry) {
+        int age = (generation - (int) (entry >>> 26 & 63)) & 63;
+        return depth(entry) - 4 * age;
+    }
+
+    /**
+     * @return the best move of an entry
+     */
+    public static int move(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    /**
+     * @return the depth of an entry
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 16 & 255);
+    }
+
+    /**
+     * @return the bound type of an entry
+     */
+    public static int bound(long entry) {
+        return (int) (entry >>> 24 & 3);
+    }
+
+    /**
+     * Gets the score of an entry, with a win or a loss counted from the position the search
+     * started from again
+     * @param entry the packed data of the entry
+     * @param ply the number of moves made since the position the search started from
+     * @return the score
+     */
+    public static int score(long entry, int ply) {
+        int score = (int) (entry >>> 32);
+        if (score >= WIN_THRESHOLD) {
+            return score - ply;
+        } else if (score <= -WIN_THRESHOLD) {
+            return score + ply;
+        }
+        return score;
+    }
+}
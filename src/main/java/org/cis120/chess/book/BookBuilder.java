@@ -0,0 +1,152 @@
+package org.cis120.chess.book;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link OpeningBook} file from a list of games. Every position reached in the first
+ * moves of the games gets an entry for each move played from it, weighted by how many games
+ * played the move.
+ *
+ * The games are read from a text file with one game per line, written as moves in coordinate
+ * notation separated by spaces (for example {@code e2e4 e7e5 g1f3 b8c6}). Move numbers such as
+ * {@code 1.} are skipped. Lines that are empty or start with {@code #} are ignored.
+ *
+ * Run with {@code mvn exec:java -Dexec.mainClass=org.cis120.chess.book.BookBuilder} and the
+ * arguments {@code <games file> <book file> [plies]}.
+ */
+public final class BookBuilder {
+
+    /**
+     * The number of moves of each game that are added to the book if no number is given
+     */
+    private static final int DEFAULT_PLIES = 16;
+
+    /**
+     * The largest weight an entry can store
+     */
+    private static final int MAX_WEIGHT = 0xFFFF;
+
+    /**
+     * The number of times each move was played from each position, keyed by the position's key
+     * and then by the move in the Polyglot format
+     */
+    private final Map<Long, Map<Integer, Integer>> counts = new HashMap<>();
+
+    /**
+     * The number of moves of each game that are added
+     */
+    private final int plies;
+
+    /**
+     * Constructor, starts an empty book
+     * @param plies the number of moves of each game to add
+     */
+    public BookBuilder(int plies) {
+        this.plies = plies;
+    }
+
+    /**
+     * Adds the first moves of a game, played from the starting position
+     * @param moves the moves of the game in coordinate notation, for example "e2e4"
+     * @throws IllegalArgumentException if a move is not legal
+     */
+    public void addGame(List<String> moves) {
+        Board board = new Board();
+        int[] legal = new int[256];
+        for (int i = 0; i < moves.size() && i < plies; i++) {
+            int count = board.generateMoves(legal, 0);
+            int move = Move.NONE;
+            for (int j = 0; j < count; j++) {
+                if (Move.toString(legal[j]).equals(moves.get(i))) {
+                    move = legal[j];
+                }
+            }
+            if (move == Move.NONE) {
+                throw new IllegalArgumentException("Illegal move: " + moves.get(i));
+            }
+            counts.computeIfAbsent(board.getPolyglotKey(), k -> new HashMap<>())
+                    .merge(OpeningBook.toBookMove(move), 1, Integer::sum);
+            board.makeMove(move);
+        }
+    }
+
+    /**
+     * Writes the book, sorted by key with the moves of each position from the most to the
+     * least played
+     * @param out the stream to write to, which is not closed
+     * @return the number of entries written
+     * @throws IOException if writing fails
+     */
+    public int write(OutputStream out) throws IOException {
+        List<Long> keys = new ArrayList<>(counts.keySet());
+        keys.sort(Long::compareUnsigned);
+        DataOutputStream data = new DataOutputStream(out);
+        int entries = 0;
+        for (long key : keys) {
+            List<Map.Entry<Integer, Integer>> moves = new ArrayList<>(counts.get(key).entrySet());
+            moves.sort((a, b) -> b.getValue() - a.getValue());
+            for (Map.Entry<Integer, Integer> move : moves) {
+                data.writeLong(key); // DataOutputStream writes big-endian, like Polyglot
+                data.writeShort(move.getKey());
+                data.writeShort(Math.min(move.getValue(), MAX_WEIGHT));
+                data.writeInt(0); // no learning data
+                entries++;
+            }
+        }
+        data.flush();
+        return entries;
+    }
+
+    /**
+     * Builds a book file from a games file
+     * @param args {@code <games file> <book file> [plies]}
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BookBuilder <games file> <book file> [plies]");
+            return;
+        }
+        BookBuilder builder = new BookBuilder(
+                args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PLIES);
+        int games = 0;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                List<String> moves = new ArrayList<>();
+                for (String token : line.split("\\s+")) {
+                    if (!token.matches("\\d+\\.+")) {
+                        moves.add(token);
+                    }
+                }
+                builder.addGame(moves);
+                games++;
+            }
+        }
+        Path book = Paths.get(args[1]);
+        int entries;
+        try (OutputStream out = Files.newOutputStream(book)) {
+            entries = builder.write(out);
+        }
+        System.out.println("Games: " + games + ", entries: " + entries + ", book: " + book);
+    }
+}
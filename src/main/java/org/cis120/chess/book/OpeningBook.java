@@ -0,0 +1,190 @@
+package org.cis120.chess.book;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+import org.cis120.chess.logic.Position;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * An opening book: the moves worth playing in positions from the start of the game, each with a
+ * weight for how often to play it. The book is a file in the Polyglot format, an array of
+ * 16 byte big-endian entries sorted by key: the 64 bit key of the position, the 16 bit move, the
+ * 16 bit weight and 32 bits of learning data that are not used. The key is the standard
+ * Polyglot key of the position ({@link Board#getPolyglotKey()}), so books in the Polyglot format
+ * from other programs can be used as well as books built by {@link BookBuilder}.
+ *
+ * The file is memory-mapped, so looking up a position does not read the file into the heap and
+ * every program that opens the same book shares the pages the operating system caches. The
+ * entries of a position are found by binary search. A book can be probed by several threads at
+ * once.
+ */
+public final class OpeningBook {
+
+    /**
+     * The size of an entry and the offsets of its fields
+     */
+    static final int ENTRY_SIZE = 16;
+    private static final int MOVE_OFFSET = 8;
+    private static final int WEIGHT_OFFSET = 10;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The number of entries in the book
+     */
+    private final int size;
+
+    /**
+     * Constructor, sets the fields
+     */
+    private OpeningBook(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.capacity() / ENTRY_SIZE;
+    }
+
+    /**
+     * Opens a book file. The file stays mapped until the book is garbage collected.
+     * @param file the book file in the Polyglot format
+     * @return the book
+     * @throws IOException if the file cannot be read
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Book is too large: " + file);
+            }
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the number of entries in the book
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Picks a book move in the board's position at random, see
+     * {@link #probe(Board, Random, int[])}
+     * @param board the board, which is not changed
+     * @param random the random numbers to pick with
+     * @return the move as a packed {@link Move}, or Move.NONE if the position is not in the
+     * book
+     */
+    public int probe(Board board, Random random) {
+        return probe(board, random, new int[256]);
+    }
+
+    /**
+     * Picks a book move in the board's position at random, with each move picked in proportion
+     * to its weight. Moves that are not legal in the position are skipped, since a different
+     * position can have the same key. The moves are picked from in one pass over the entries,
+     * each replacing the move picked so far with the chance of its weight out of the weights
+     * seen so far, so only the legal moves need an array.
+     * @param board the board, which is not changed
+     * @param random the random numbers to pick with
+     * @param legal an array to write the legal moves of the board into, with room for all of
+     *              them
+     * @return the move as a packed {@link Move}, or Move.NONE if the position is not in the
+     * book
+     */
+    public int probe(Board board, Random random, int[] legal) {
+        long key = board.getPolyglotKey();
+        int legalCount = board.generateMoves(legal, 0);
+        int picked = Move.NONE;
+        int total = 0;
+        for (int i = find(key); i < size && keyAt(i) == key; i++) {
+            int move = toMove(board, buffer.getShort(i * ENTRY_SIZE + MOVE_OFFSET) & 0xFFFF,
+                    legal, legalCount);
+            int weight = buffer.getShort(i * ENTRY_SIZE + WEIGHT_OFFSET) & 0xFFFF;
+            if (move != Move.NONE && weight > 0) {
+                total += weight;
+                if (random.nextInt(total) < weight) {
+                    picked = move;
+                }
+            }
+        }
+        return picked;
+    }
+
+    /**
+     * @return the index of the first entry with a key that is not less than the key, comparing
+     * keys as unsigned numbers the way they are sorted
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the key of an entry
+     */
+    private long keyAt(int index) {
+        return buffer.getLong(index * ENTRY_SIZE);
+    }
+
+    /**
+     * Converts a move from the Polyglot format (the square the move ends on in bits 0-5, the
+     * square it starts on in bits 6-11 and the piece a pawn promotes to in bits 12-14, 1 for a
+     * knight up to 4 for a queen) to a legal move of the board. Castling is written as the king
+     * capturing its own rook.
+     * @param board the board
+     * @param bookMove the move in the Polyglot format
+     * @param legal the legal moves of the board
+     * @param legalCount the number of legal moves
+     * @return the legal move, or Move.NONE if the move is not legal
+     */
+    private static int toMove(Board board, int bookMove, int[] legal, int legalCount) {
+        int to = bookMove & 63;
+        int from = bookMove >>> 6 & 63;
+        int promotion = bookMove >>> 12 & 7;
+        int piece = board.pieceAt(from);
+        if (piece != Position.EMPTY && Position.type(piece) == Position.KING
+                && board.pieceAt(to) == piece + Position.ROOK - Position.KING) {
+            to = to > from ? from + 2 : from - 2;
+        }
+        int type = promotion == 0 ? 0 : Position.KNIGHT + 1 - promotion;
+        for (int i = 0; i < legalCount; i++) {
+            int move = legal[i];
+            if (Move.from(move) == from && Move.to(move) == to && Move.promotion(move) == type) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Converts a legal move of the board to the Polyglot format, see
+     * {@link #toMove(Board, int, int[], int)}
+     * @param move the packed {@link Move}
+     * @return the move in the Polyglot format
+     */
+    static int toBookMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if (Move.flag(move) == Move.CASTLING) {
+            to = to > from ? from + 3 : from - 4; // the corner the rook is on
+        }
+        int promotion = Move.promotion(move);
+        return to | from << 6 | (promotion == 0 ? 0 : Position.KNIGHT + 1 - promotion) << 12;
+    }
+}
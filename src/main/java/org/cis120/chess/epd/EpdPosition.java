@@ -0,0 +1,218 @@
+package org.cis120.chess.epd;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+import org.cis120.chess.logic.Position;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A test position in Extended Position Description, the format of test suites such as WAC and
+ * STS: the first four fields of a FEN followed by operations separated by semicolons, for
+ * example {@code r1b2rk1/... w - - bm Qg6; id "WAC.001";}. The operations used are the best
+ * moves ({@code bm}), the moves to avoid ({@code am}) and the name ({@code id}). Moves are
+ * written in Standard Algebraic Notation.
+ */
+public final class EpdPosition {
+
+    /**
+     * A move in Standard Algebraic Notation: the piece (none for a pawn), the file and rank it
+     * moves from if they are needed to tell moves apart, the square it moves to and the piece a
+     * pawn promotes to
+     */
+    private static final Pattern SAN = Pattern.compile(
+            "([KQRBN])?([a-h])?([1-8])?x?([a-h][1-8])(?:=?([QRBNqrbn]))?");
+
+    /**
+     * The position in Forsyth-Edwards Notation, without move counters
+     */
+    private final String fen;
+
+    /**
+     * The name of the position, or the line number if it has no id
+     */
+    private final String id;
+
+    /**
+     * The best moves and the moves to avoid, as written in the file
+     */
+    private final List<String> bestMoves, avoidMoves;
+
+    /**
+     * Constructor, sets the fields
+     */
+    private EpdPosition(String fen, String id, List<String> bestMoves, List<String> avoidMoves) {
+        this.fen = fen;
+        this.id = id;
+        this.bestMoves = Collections.unmodifiableList(bestMoves);
+        this.avoidMoves = Collections.unmodifiableList(avoidMoves);
+    }
+
+    /**
+     * Reads a line of an EPD file
+     * @param line the line
+     * @param number the number of the line, used as the id if the line has none
+     * @return the position
+     * @throws IllegalArgumentException if the line has no position, neither best moves nor
+     * moves to avoid, or a move that is not legal in the position
+     */
+    public static EpdPosition parse(String line, int number) {
+        String[] fields = line.trim().split("\\s+", 5);
+        if (fields.length < 5) {
+            throw new IllegalArgumentException("Invalid EPD: " + line);
+        }
+        String fen = fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3];
+        String id = String.valueOf(number);
+        List<String> bestMoves = new ArrayList<>();
+        List<String> avoidMoves = new ArrayList<>();
+        for (String operation : fields[4].split(";")) {
+            String[] parts = operation.trim().split("\\s+", 2);
+            if (parts.length < 2) {
+                continue;
+            }
+            switch (parts[0]) {
+                case "bm":
+                    Collections.addAll(bestMoves, parts[1].split("\\s+"));
+                    break;
+                case "am":
+                    Collections.addAll(avoidMoves, parts[1].split("\\s+"));
+                    break;
+                case "id":
+                    id = parts[1].replace("\"", "");
+                    break;
+                default:
+                    break; // other operations are not used
+            }
+        }
+        if (bestMoves.isEmpty() && avoidMoves.isEmpty()) {
+            throw new IllegalArgumentException("EPD has no bm or am: " + line);
+        }
+        Board board = new Board(fen);
+        for (String move : bestMoves) {
+            parseSan(board, move);
+        }
+        for (String move : avoidMoves) {
+            parseSan(board, move);
+        }
+        return new EpdPosition(fen, id, bestMoves, avoidMoves);
+    }
+
+    /**
+     * @return the position in Forsyth-Edwards Notation, without move counters
+     */
+    public String getFen() {
+        return fen;
+    }
+
+    /**
+     * @return the name of the position
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the best moves as written in the file
+     */
+    public List<String> getBestMoves() {
+        return bestMoves;
+    }
+
+    /**
+     * @return the moves to avoid as written in the file
+     */
+    public List<String> getAvoidMoves() {
+        return avoidMoves;
+    }
+
+    /**
+     * Checks if a move solves the position: it is one of the best moves if there are any, and
+     * not one of the moves to avoid
+     * @param board a board in the position
+     * @param move the packed {@link Move}
+     * @return if the move solves the position
+     */
+    public boolean isSolution(Board board, int move) {
+        for (String avoid : avoidMoves) {
+            if (parseSan(board, avoid) == move) {
+                return false;
+            }
+        }
+        if (bestMoves.isEmpty()) {
+            return true;
+        }
+        for (String best : bestMoves) {
+            if (parseSan(board, best) == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the legal move of the board written in Standard Algebraic Notation. Check and
+     * annotation marks are ignored, and moves in coordinate notation (for example "e2e4") are
+     * accepted too.
+     * @param board the board
+     * @param san the move, for example "Nbd7", "exd5", "e8=Q+" or "O-O"
+     * @return the packed {@link Move}
+     * @throws IllegalArgumentException if the move is not legal or is ambiguous
+     */
+    public static int parseSan(Board board, String san) {
+        String text = san.replaceAll("[+#!?]", "").replace('0', 'O');
+        int[] moves = new int[256];
+        int count = board.generateMoves(moves, 0);
+        int found = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            if (matches(board, moves[i], text)) {
+                if (found != Move.NONE) {
+                    throw new IllegalArgumentException("Ambiguous move: " + san);
+                }
+                found = moves[i];
+            }
+        }
+        if (found == Move.NONE) {
+            throw new IllegalArgumentException("Illegal move: " + san);
+        }
+        return found;
+    }
+
+    /**
+     * Checks if a legal move is the move written in Standard Algebraic Notation, without check
+     * and annotation marks
+     */
+    private static boolean matches(Board board, int move, String text) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if (Move.toString(move).equals(text)) {
+            return true;
+        } else if (Move.flag(move) == Move.CASTLING) {
+            return text.equals(to > from ? "O-O" : "O-O-O");
+        }
+        Matcher matcher = SAN.matcher(text);
+        if (!matcher.matches()) {
+            return false;
+        }
+        String piece = matcher.group(1);
+        int type = piece == null ? Position.PAWN : "KQRBN".indexOf(piece.charAt(0));
+        String promotion = matcher.group(5);
+        int promotionType = promotion == null ? 0
+                : "KQRBN".indexOf(Character.toUpperCase(promotion.charAt(0)));
+        String target = matcher.group(4);
+        return Position.type(board.pieceAt(from)) == type
+                && to == (target.charAt(1) - '1') * 8 + target.charAt(0) - 'a'
+                && (matcher.group(2) == null || matcher.group(2).charAt(0) - 'a' == (from & 7))
+                && (matcher.group(3) == null || matcher.group(3).charAt(0) - '1' == from >> 3)
+                && (Move.flag(move) == Move.PROMOTION ? Move.promotion(move) : 0)
+                == promotionType;
+    }
+
+    @Override
+    public String toString() {
+        return fen + " id " + id;
+    }
+}
@@ -0,0 +1,256 @@
+package org.cis120.chess.epd;
+
+import org.cis120.chess.ai.ChessAI;
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the {@link ChessAI} on a test suite of {@link EpdPosition}s and reports how many
+ * positions it solves. Each position is searched by its own ai with one thread for a fixed time,
+ * and the positions are searched in parallel, one per processor by default. A position is solved
+ * if the move the ai plays solves it. The time to solution is the time the search found the
+ * move and kept it for every deeper depth.
+ *
+ * Run with {@code mvn exec:java -Dexec.mainClass=org.cis120.chess.epd.EpdRunner} and the
+ * arguments {@code <epd file> [milliseconds per position] [threads]}.
+ */
+public final class EpdRunner {
+
+    /**
+     * The time each position is searched for if no time is given, in milliseconds
+     */
+    private static final long DEFAULT_TIME = 1000;
+
+    /**
+     * The result of the search of one position
+     */
+    public static final class Result {
+
+        /**
+         * The position
+         */
+        private final EpdPosition position;
+
+        /**
+         * The move the ai played
+         */
+        private final int move;
+
+        /**
+         * If the move solves the position
+         */
+        private final boolean solved;
+
+        /**
+         * The time the ai found the move it kept, in milliseconds
+         */
+        private final long millis;
+
+        /**
+         * The number of positions searched
+         */
+        private final long nodes;
+
+        /**
+         * Constructor, sets the fields
+         */
+        private Result(EpdPosition position, int move, boolean solved, long millis, long nodes) {
+            this.position = position;
+            this.move = move;
+            this.solved = solved;
+            this.millis = millis;
+            this.nodes = nodes;
+        }
+
+        /**
+         * @return the position
+         */
+        public EpdPosition getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the move the ai played, as a packed {@link Move}
+         */
+        public int getMove() {
+            return move;
+        }
+
+        /**
+         * @return if the move solves the position
+         */
+        public boolean isSolved() {
+            return solved;
+        }
+
+        /**
+         * @return the time to solution in milliseconds if the position was solved
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return the number of positions searched
+         */
+        public long getNodes() {
+            return nodes;
+        }
+    }
+
+    /**
+     * The time each position is searched for, in milliseconds
+     */
+    private final long time;
+
+    /**
+     * The number of positions searched at once
+     */
+    private final int threads;
+
+    /**
+     * Constructor, sets the fields
+     * @param time the time each position is searched for, in milliseconds
+     * @param threads the number of positions searched at once
+     */
+    public EpdRunner(long time, int threads) {
+        this.time = time;
+        this.threads = threads;
+    }
+
+    /**
+     * Searches every position of a suite
+     * @param positions the positions
+     * @return the result of each position, in the same order
+     */
+    public List<Result> run(List<EpdPosition> positions) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (EpdPosition position : positions) {
+                futures.add(executor.submit(() -> search(position)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the suite", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Searching a position failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches one position on the calling thread
+     * @param position the position
+     * @return the result
+     */
+    public Result search(EpdPosition position) {
+        Board board = new Board(position.getFen());
+        ChessAI ai = new ChessAI(board.getTurn(), board);
+        ai.setTimeBudget(time);
+        long start = System.nanoTime();
+        // the time the move kept to the end was first found, or -1 while it does not solve it
+        long[] found = {-1};
+        ai.setSearchListener((depth, score, nodes, bestMove) -> {
+            if (!position.isSolution(board, bestMove)) {
+                found[0] = -1;
+            } else if (found[0] < 0) {
+                found[0] = (System.nanoTime() - start) / 1000000;
+            }
+        });
+        int move = ai.searchAsync(Runnable::run).join();
+        long millis = (System.nanoTime() - start) / 1000000;
+        boolean solved = move != Move.NONE && position.isSolution(board, move);
+        return new Result(position, move, solved, solved && found[0] >= 0 ? found[0] : millis,
+                ai.getNodes());
+    }
+
+    /**
+     * Reads the positions of an EPD file, skipping empty lines and lines that start with #
+     * @param lines the lines of the file
+     * @return the positions
+     * @throws IllegalArgumentException if a line is not a valid position
+     */
+    public static List<EpdPosition> parse(List<String> lines) {
+        List<EpdPosition> ret = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                try {
+                    ret.add(EpdPosition.parse(line, i + 1));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(),
+                            e);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Runs a suite and prints the result of each position and the totals
+     * @param args {@code <epd file> [milliseconds per position] [threads]}
+     * @throws IOException if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: EpdRunner <epd file> [milliseconds per position] [threads]");
+            return;
+        }
+        List<EpdPosition> positions = parse(Files.readAllLines(Paths.get(args[0]),
+                StandardCharsets.UTF_8));
+        long time = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_TIME;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        List<Result> results = new EpdRunner(time, threads).run(positions);
+        long nanos = System.nanoTime() - start;
+
+        int solved = 0;
+        long solvedMillis = 0;
+        long totalNodes = 0;
+        System.out.printf("%-16s %-6s %-8s %-20s %10s %12s%n",
+                "Id", "Result", "Move", "Expected", "Time (ms)", "Nodes");
+        for (Result result : results) {
+            EpdPosition position = result.getPosition();
+            String expected = position.getBestMoves().isEmpty()
+                    ? "not " + String.join(" ", position.getAvoidMoves())
+                    : String.join(" ", position.getBestMoves());
+            System.out.printf("%-16s %-6s %-8s %-20s %10s %12d%n",
+                    position.getId(), result.isSolved() ? "ok" : "FAIL",
+                    result.getMove() == Move.NONE ? "-" : Move.toString(result.getMove()), expected,
+                    result.isSolved() ? String.valueOf(result.getMillis()) : "-",
+                    result.getNodes());
+            if (result.isSolved()) {
+                solved++;
+                solvedMillis += result.getMillis();
+            }
+            totalNodes += result.getNodes();
+        }
+        System.out.println();
+        System.out.println("Solved: " + solved + "/" + results.size());
+        System.out.println("Average time to solution (ms): "
+                + (solved == 0 ? "-" : String.valueOf(solvedMillis / solved)));
+        System.out.println("Time (ms): " + nanos / 1000000 + " on " + threads + " threads");
+        System.out.println("Nodes: " + totalNodes + ", nodes/sec: "
+                + (nanos == 0 ? 0 : totalNodes * 1000000000L / nanos));
+    }
+}
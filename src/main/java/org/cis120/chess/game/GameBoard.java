@@ -1,19 +1,32 @@
 package org.cis120.chess.game;
 
 import org.cis120.chess.ai.ChessAI;
+import org.cis120.chess.book.OpeningBook;
 import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
 import org.cis120.chess.logic.Tile;
+import org.cis120.chess.tablebase.Tablebase;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This class instantiates a Board object, which is the model for the game.
  * As the user clicks the game board, the model is updated. Whenever the model
  * is updated, the game board repaints itself and updates its status JLabel to
- * reflect the current state of the model.
+ * reflect the current state of the model. The AI searches on a background thread so the
+ * window stays responsive, and its move is played back on the event dispatch thread. While the
+ * user thinks, the AI searches the reply it expects (pondering), and keeps that search going if
+ * the user plays it.
  */
 @SuppressWarnings("serial")
 public class GameBoard extends JPanel {
@@ -21,6 +34,24 @@ public class GameBoard extends JPanel {
     private Board chessBoard; // model for the game
     private JLabel status; // current status text
     private ChessAI ai; // the ai that plays chess
+    private final ExecutorService aiExecutor; // the background thread the ai searches on
+    private CompletableFuture<Integer> aiSearch; // the running search of the ai, or null
+    private CompletableFuture<Integer> aiPonder; // the ai's search on the expected reply, or null
+    private int ponderMove; // the reply the ai is pondering on
+    private final OpeningBook book; // the ai's opening book, or null if there is none
+    private final Tablebase tablebase; // the ai's endgame tablebase, or null if there is none
+
+    /**
+     * The file the opening book is read from, unless the chess.book system property names
+     * another one
+     */
+    public static final String BOOK_FILE = "book.bin";
+
+    /**
+     * The directory the endgame tablebase is read from, unless the chess.tablebases system
+     * property names another one
+     */
+    public static final String TABLEBASE_DIRECTORY = "tablebases";
 
     /**
      * Game constants
@@ -38,6 +69,13 @@ public class GameBoard extends JPanel {
 
         chessBoard = new Board(); // initializes model for the game
         status = statusInit; // initializes the status JLabel
+        book = openBook();
+        tablebase = openTablebase();
+        aiExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Chess AI");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         /*
          * Listens for mouseclicks. Updates the model, then updates the game
@@ -46,6 +84,9 @@ public class GameBoard extends JPanel {
         addMouseListener(new MouseAdapter() {
             @Override
             public void mouseReleased(MouseEvent e) {
+                if (aiSearch != null) {
+                    return; // the ai is thinking
+                }
                 Point p = e.getPoint();
 
                 // updates the model given the coordinates of the mouseclick
@@ -55,18 +96,89 @@ public class GameBoard extends JPanel {
                 }
 
                 updateBoard();
-                SwingUtilities.invokeLater(() -> aiMove());
+                aiMove();
             }
         });
     }
 
     /**
-     * The AI makes a move
+     * Starts the AI's search for its move on the background thread if it is the AI's turn. If
+     * the AI was pondering on the move the user just played, that search becomes the search for
+     * its move, and otherwise the pondering is stopped.
      */
     private void aiMove() {
-        if (ai != null && ai.getWhite() == chessBoard.getTurn()) {
-            ai.playTurn();
+        if (ai == null || ai.getWhite() != chessBoard.getTurn() || aiSearch != null
+                || chessBoard.checkMate() || chessBoard.staleMate()) {
+            return;
+        }
+        if (aiPonder != null && chessBoard.getLastMove() == ponderMove) {
+            ai.ponderHit();
+            playWhenDone(aiPonder);
+            aiPonder = null;
+        } else {
+            cancelPonder();
+            playWhenDone(ai.searchAsync(aiExecutor));
+        }
+    }
+
+    /**
+     * Plays the move of a search of the AI on the event dispatch thread when the search
+     * finishes, unless it was cancelled, and then starts pondering on the user's reply. A
+     * search that fails leaves the board as it is and shows the failure in the status JLabel
+     * @param search the search for the AI's move
+     */
+    private void playWhenDone(CompletableFuture<Integer> search) {
+        aiSearch = search;
+        search.whenCompleteAsync((move, error) -> {
+            if (search != aiSearch) {
+                return; // cancelled by reset or undo
+            }
+            aiSearch = null;
+            if (error == null && move != Move.NONE) {
+                chessBoard.playMove(move);
+                ponderMove = ai.getPonderMove();
+                aiPonder = ai.ponderAsync(aiExecutor);
+            }
             updateBoard();
+            if (error != null) {
+                status.setText("AI search failed: " + error);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Cancels the search of the AI if it is thinking, so its move is never played, and stops
+     * it pondering
+     */
+    private void cancelAiMove() {
+        if (aiSearch != null) {
+            aiSearch.cancel(false);
+            aiSearch = null;
+        }
+        cancelPonder();
+    }
+
+    /**
+     * Stops the AI pondering on the user's reply
+     */
+    private void cancelPonder() {
+        if (aiPonder != null) {
+            aiPonder.cancel(false);
+            aiPonder = null;
+        }
+    }
+
+    /**
+     * Shows the progress of the AI's search in the status JLabel
+     * @param depth the depth the search finished
+     * @param nodes the number of positions searched so far
+     * @param bestMove the best move so far
+     */
+    private void showProgress(int depth, long nodes, int bestMove) {
+        if (aiSearch != null) {
+            updateStatus();
+            status.setText(status.getText() + " - thinking: depth " + depth + ", " + nodes
+                    + " positions, best " + Move.toString(bestMove));
         }
     }
 
@@ -92,6 +204,40 @@ public class GameBoard extends JPanel {
         chessBoard.promote(result);
     }
 
+    /**
+     * Opens the opening book file if there is one
+     * @return the book, or null if the file does not exist or cannot be read
+     */
+    private static OpeningBook openBook() {
+        Path file = Paths.get(System.getProperty("chess.book", BOOK_FILE));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return OpeningBook.open(file);
+        } catch (IOException e) {
+            System.err.println("Could not open the opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the endgame tablebase directory if there is one
+     * @return the tablebase, or null if the directory does not exist
+     */
+    private static Tablebase openTablebase() {
+        Path directory = Paths.get(System.getProperty("chess.tablebases", TABLEBASE_DIRECTORY));
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        try {
+            return Tablebase.open(directory);
+        } catch (IOException e) {
+            System.err.println("Could not open the endgame tablebase: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Shows the game menu with the instructions and what mode of the game to play as.
      * Initializes the ai if the user selects to play against the ai.
@@ -108,18 +254,25 @@ public class GameBoard extends JPanel {
                 JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, null);
         if (result == 0) {
             ai = new ChessAI(true, chessBoard);
-            aiMove();
         } else if (result == 1) {
             ai = new ChessAI(false, chessBoard);
         } else {
             ai = null;
         }
+        if (ai != null) {
+            ai.setOpeningBook(book);
+            ai.setTablebase(tablebase);
+            ai.setSearchListener((depth, score, nodes, bestMove) -> SwingUtilities.invokeLater(
+                    () -> showProgress(depth, nodes, bestMove)));
+            aiMove();
+        }
     }
 
     /**
      * (Re-)sets the game to its initial state.
      */
     public void reset() {
+        cancelAiMove();
         chessBoard.reset();
         updateBoard();
         showMenu();
@@ -128,14 +281,17 @@ public class GameBoard extends JPanel {
     }
 
     /**
-     * Undoes the last move that was made by the user
+     * Undoes the last move that was made by the user. Stops the AI if it is thinking about its
+     * reply to that move.
      */
     public void undo() {
+        cancelAiMove();
         chessBoard.undo();
-        if (ai != null) {
+        if (ai != null && ai.getWhite() == chessBoard.getTurn()) {
             chessBoard.undo(); //undo twice if playing against ai (undoes ai move as well)
         }
         updateBoard();
+        aiMove(); // the ai moves again if it plays white and all the moves were undone
     }
 
     /**
@@ -0,0 +1,339 @@
+package org.cis120.chess.logic;
+
+/**
+ * Static helpers and precomputed attack tables for bitboards. A bitboard is a long where bit
+ * {@code sq} is set if square {@code sq} is occupied, with a1 = 0, h1 = 7, a8 = 56 and h8 = 63.
+ * Board coordinates (x is the row counted from black's side, y is the column) are converted to
+ * squares with {@link #square(int, int)} and back with {@link #x(int)} and {@link #y(int)}.
+ */
+public final class Bitboards {
+
+    /**
+     * Masks for the outer files and ranks
+     */
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_1 = 0xFFL;
+    public static final long RANK_8 = RANK_1 << 56;
+
+    /**
+     * The squares a knight / king on each square attacks
+     */
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+
+    /**
+     * The squares a pawn on each square attacks, indexed by [0 for white, 1 for black][square]
+     */
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    /**
+     * The rank and file deltas of the eight ray directions. The first four directions (N, E,
+     * NE, NW) go towards higher squares and the last four (S, W, SW, SE) towards lower squares.
+     */
+    private static final int[] RAY_RANK = {1, 0, 1, 1, -1, 0, -1, -1};
+    private static final int[] RAY_FILE = {0, 1, 1, -1, 0, -1, -1, 1};
+
+    /**
+     * The squares on each ray from each square on an empty board, indexed by [direction][square]
+     */
+    private static final long[][] RAYS = new long[8][64];
+
+    /**
+     * The magic bitboard tables of the rook and the bishop. The squares of a slider's rays that
+     * can block it (the rays without the last square, since a piece there blocks nothing) are
+     * its mask. Multiplying the occupied squares in the mask by the square's magic number and
+     * shifting the product right gathers them into an index into the square's part of the
+     * attack table, so an attack set is one multiply, shift and lookup. The tables are filled
+     * in when the class loads.
+     */
+    private static final Magic[] ROOK_MAGICS = new Magic[64];
+    private static final Magic[] BISHOP_MAGICS = new Magic[64];
+    private static final long[] ROOK_TABLE = new long[0x19000];
+    private static final long[] BISHOP_TABLE = new long[0x1480];
+
+    /**
+     * The magic numbers of each square. They were found by trying random numbers with few bits
+     * set until one mapped every set of blockers of the square to a table entry without
+     * mixing up different attack sets, which takes too long to do every time the class loads.
+     */
+    private static final long[] ROOK_MAGIC_NUMBERS = {
+        0x008000908064C000L, 0x0040200040001000L, 0x0180100080A0010AL,
+        0x8880041000800800L, 0x1200100201200804L, 0x0200020004011008L,
+        0x2180010000800600L, 0x0200005088210204L, 0x0000800080204001L,
+        0x1000804000802001L, 0x8240801000200080L, 0x8611001004200900L,
+        0x008180800C001800L, 0x0100800200800400L, 0x0A02000102000408L,
+        0x8020802300104280L, 0x0080004000402000L, 0xE010104000402000L,
+        0x0800808010002000L, 0xA280210008100100L, 0x0001818014000800L,
+        0xA002010100080400L, 0x0008040088020130L, 0x0001020004048845L,
+        0x0081826280004004L, 0x2020810900284000L, 0x0200100080802000L,
+        0x0200080080100080L, 0x8083080100100500L, 0x4406000901000400L,
+        0x0005020080800100L, 0x0090204200008114L, 0x0010400094800420L,
+        0x0900804000802002L, 0x0201001841002000L, 0x4100080080801000L,
+        0x4540040080800800L, 0x0000800400800200L, 0x9281800100808200L,
+        0x8004048102000854L, 0x4420802040008006L, 0x0880500020004002L,
+        0x0801200241050010L, 0x8400080010008080L, 0x0008000500090010L,
+        0x0082009084020008L, 0x4012000108020004L, 0x9000104D08860004L,
+        0x2004204114800100L, 0x0148802112400300L, 0x0202842000100880L,
+        0x001B080080900080L, 0x001A002008100600L, 0x0004008004020080L,
+        0x5181000600040300L, 0x0000044401128A00L, 0x8044110480002441L,
+        0x1023012082044112L, 0x00804080200A0012L, 0x000420310A004A42L,
+        0x0023001004020801L, 0x0882001008040102L, 0x000230088118020CL,
+        0x0000019025040042L
+    };
+    private static final long[] BISHOP_MAGIC_NUMBERS = {
+        0x1010220204082A00L, 0x80E0020202002804L, 0x2008480104200020L,
+        0x000220920280002DL, 0x32040421000B0284L, 0x1002080404000400L,
+        0x0004160892080040L, 0x2203024206204201L, 0x0002404264010200L,
+        0x1120908408428124L, 0xB100424403002280L, 0x240008060440C288L,
+        0x2040040420490400L, 0x0100620210040022L, 0x0400084104202028L,
+        0x0010050080908820L, 0x0C90A04490824802L, 0x000200A008210130L,
+        0x0C08001000204010L, 0x0008000186014480L, 0x0601044820080021L,
+        0x0002000101013100L, 0x1400A08108080204L, 0x0250401104485410L,
+        0x4820240810142843L, 0x0009142A20182200L, 0x0848140048440020L,
+        0x2020120000400440L, 0x0108840200802003L, 0x0009070082009492L,
+        0x020C0C0038424245L, 0xCA44005808210410L, 0x8011212000500404L,
+        0x2028840510101008L, 0x0004042A00041400L, 0x0624020080980080L,
+        0x1820410040840040L, 0x2201004202050100L, 0x402A088A24040224L,
+        0x0242061040002400L, 0x90020202400821A0L, 0x00C9009004E01002L,
+        0x58C2060202023100L, 0x0000012214040800L, 0x0210846810100200L,
+        0x0004208081010200L, 0x01A4108404442100L, 0x8054082C80280106L,
+        0x0004144904104208L, 0x00324C0A11104000L, 0x1000020231040100L,
+        0x2080001042020004L, 0x0544021020288104L, 0x1103501408083020L,
+        0x4010451004960002L, 0x003010091C44902CL, 0x0102402884202000L,
+        0x0480804C00841086L, 0x04602C8602210400L, 0x0000004000420200L,
+        0x0040000020442C18L, 0x4483804089094100L, 0x80000B0248020400L,
+        0x0045010808008680L
+    };
+
+    /**
+     * The squares strictly between two squares on the same rank, file or diagonal, and the whole
+     * line through two such squares, indexed by [square][square]. Both are 0 if the squares are
+     * not aligned.
+     */
+    static final long[][] BETWEEN = new long[64][64];
+    static final long[][] LINE = new long[64][64];
+
+    static {
+        int[] knightRank = {2, 2, -2, -2, 1, -1, 1, -1};
+        int[] knightFile = {1, -1, 1, -1, 2, 2, -2, -2};
+        for (int sq = 0; sq < 64; sq++) {
+            int rank = sq >> 3;
+            int file = sq & 7;
+            for (int i = 0; i < 8; i++) {
+                KNIGHT_ATTACKS[sq] |= bit(rank + knightRank[i], file + knightFile[i]);
+                KING_ATTACKS[sq] |= bit(rank + RAY_RANK[i], file + RAY_FILE[i]);
+                for (int r = rank + RAY_RANK[i], f = file + RAY_FILE[i];
+                        r >= 0 && r < 8 && f >= 0 && f < 8; r += RAY_RANK[i], f += RAY_FILE[i]) {
+                    RAYS[i][sq] |= 1L << (r * 8 + f);
+                }
+            }
+            PAWN_ATTACKS[0][sq] = bit(rank + 1, file - 1) | bit(rank + 1, file + 1);
+            PAWN_ATTACKS[1][sq] = bit(rank - 1, file - 1) | bit(rank - 1, file + 1);
+        }
+        int rookOffset = 0;
+        int bishopOffset = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_MAGICS[sq] = initMagic(sq, true, ROOK_MAGIC_NUMBERS[sq], ROOK_TABLE, rookOffset);
+            rookOffset += 1 << (64 - ROOK_MAGICS[sq].shift);
+            BISHOP_MAGICS[sq] = initMagic(sq, false, BISHOP_MAGIC_NUMBERS[sq], BISHOP_TABLE,
+                    bishopOffset);
+            bishopOffset += 1 << (64 - BISHOP_MAGICS[sq].shift);
+        }
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                long bitA = 1L << a;
+                long bitB = 1L << b;
+                if (a != b && (rookAttacks(a, 0) & bitB) != 0) {
+                    BETWEEN[a][b] = rookAttacks(a, bitB) & rookAttacks(b, bitA);
+                    LINE[a][b] = (rookAttacks(a, 0) & rookAttacks(b, 0)) | bitA | bitB;
+                } else if (a != b && (bishopAttacks(a, 0) & bitB) != 0) {
+                    BETWEEN[a][b] = bishopAttacks(a, bitB) & bishopAttacks(b, bitA);
+                    LINE[a][b] = (bishopAttacks(a, 0) & bishopAttacks(b, 0)) | bitA | bitB;
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    /**
+     * The magic bitboard entry of a slider on one square
+     */
+    private static final class Magic {
+
+        /**
+         * The squares that can block the slider
+         */
+        private final long mask;
+
+        /**
+         * The number the blockers are multiplied by
+         */
+        private final long magic;
+
+        /**
+         * How far the product is shifted right, 64 minus the number of squares in the mask
+         */
+        private final int shift;
+
+        /**
+         * Where the square's attack sets start in the attack table
+         */
+        private final int offset;
+
+        /**
+         * Constructor, sets the fields
+         */
+        private Magic(long mask, long magic, int shift, int offset) {
+            this.mask = mask;
+            this.magic = magic;
+            this.shift = shift;
+            this.offset = offset;
+        }
+
+        /**
+         * @return the index into the attack table of the attack set for the occupied squares
+         */
+        private int index(long occupied) {
+            return offset + (int) (((occupied & mask) * magic) >>> shift);
+        }
+    }
+
+    /**
+     * Fills in the attack table entries of a slider on a square. Different sets of blockers can
+     * share an entry if they have the same attack set.
+     * @param sq the square
+     * @param rook if the slider is a rook, otherwise it is a bishop
+     * @param magic the magic number of the square
+     * @param table the attack table
+     * @param offset where the square's attack sets start in the table
+     * @return the magic bitboard entry of the square
+     * @throws IllegalStateException if the magic number maps two different attack sets to the
+     * same entry
+     */
+    private static Magic initMagic(int sq, boolean rook, long magic, long[] table, int offset) {
+        long edges = ((RANK_1 | RANK_8) & ~(RANK_1 << ((sq >> 3) * 8)))
+                | ((FILE_A | FILE_H) & ~(FILE_A << (sq & 7)));
+        long mask = slidingAttacks(sq, rook, 0) & ~edges;
+        Magic ret = new Magic(mask, magic, 64 - Long.bitCount(mask), offset);
+        boolean[] filled = new boolean[1 << Long.bitCount(mask)];
+        // enumerate every subset of the mask with the carry-rippler trick
+        long blockers = 0;
+        do {
+            long attacks = slidingAttacks(sq, rook, blockers);
+            int index = ret.index(blockers);
+            if (filled[index - offset] && table[index] != attacks) {
+                throw new IllegalStateException("Bad magic number for square " + sq);
+            }
+            filled[index - offset] = true;
+            table[index] = attacks;
+            blockers = (blockers - mask) & mask;
+        } while (blockers != 0);
+        return ret;
+    }
+
+    /**
+     * Gets the bitboard with only the square at the rank and file set
+     * @return the bitboard, or 0 if the rank or file is off the board
+     */
+    private static long bit(int rank, int file) {
+        if (rank < 0 || rank >= 8 || file < 0 || file >= 8) {
+            return 0;
+        }
+        return 1L << (rank * 8 + file);
+    }
+
+    /**
+     * Converts board coordinates to a square index
+     * @param x the x coordinate (row 0 is black's back rank)
+     * @param y the y coordinate (column 0 is the a file)
+     * @return the square index
+     */
+    public static int square(int x, int y) {
+        return (7 - x) * 8 + y;
+    }
+
+    /**
+     * @return the x coordinate of the square
+     */
+    public static int x(int sq) {
+        return 7 - (sq >> 3);
+    }
+
+    /**
+     * @return the y coordinate of the square
+     */
+    public static int y(int sq) {
+        return sq & 7;
+    }
+
+    /**
+     * @return the squares attacked along a single ray from the square, stopping at (and
+     * including) the first occupied square
+     */
+    private static long rayAttacks(int direction, int sq, long occupied) {
+        long attacks = RAYS[direction][sq];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            int blocker = direction < 4 ? Long.numberOfTrailingZeros(blockers)
+                    : 63 - Long.numberOfLeadingZeros(blockers);
+            attacks ^= RAYS[direction][blocker];
+        }
+        return attacks;
+    }
+
+    /**
+     * Computes the squares a rook or bishop attacks by walking its rays. Only used to fill in
+     * the magic bitboard tables, which are looked up instead.
+     * @return the squares the slider on the square attacks given the occupied squares
+     */
+    private static long slidingAttacks(int sq, boolean rook, long occupied) {
+        int first = rook ? 0 : 2;
+        return rayAttacks(first, sq, occupied) | rayAttacks(first + 1, sq, occupied)
+                | rayAttacks(first + 4, sq, occupied) | rayAttacks(first + 5, sq, occupied);
+    }
+
+    /**
+     * @return the squares a rook on the square attacks given the occupied squares
+     */
+    public static long rookAttacks(int sq, long occupied) {
+        return ROOK_TABLE[ROOK_MAGICS[sq].index(occupied)];
+    }
+
+    /**
+     * @return the squares a bishop on the square attacks given the occupied squares
+     */
+    public static long bishopAttacks(int sq, long occupied) {
+        return BISHOP_TABLE[BISHOP_MAGICS[sq].index(occupied)];
+    }
+
+    /**
+     * @return the squares a queen on the square attacks given the occupied squares
+     */
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    /**
+     * @return the squares a knight on the square attacks
+     */
+    public static long knightAttacks(int sq) {
+        return KNIGHT_ATTACKS[sq];
+    }
+
+    /**
+     * @return the squares a king on the square attacks
+     */
+    public static long kingAttacks(int sq) {
+        return KING_ATTACKS[sq];
+    }
+
+    /**
+     * @return the squares a pawn of the given color on the square attacks
+     */
+    public static long pawnAttacks(int sq, boolean white) {
+        return PAWN_ATTACKS[white ? 0 : 1][sq];
+    }
+}
@@ -1,5 +1,6 @@
 package org.cis120.chess.logic;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
@@ -9,9 +10,10 @@ import java.util.LinkedList;
 public class Board {
 
     /**
-     * A boolean variable keeping track of if it is white's turn or not
+     * The standard starting position in Forsyth-Edwards Notation
      */
-    private boolean whiteTurn;
+    public static final String START_FEN =
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
 
     /**
      * The currently selected piece by the user
@@ -19,38 +21,87 @@ public class Board {
     private Piece currentPiece;
 
     /**
-     * A LinkedList of Turns representing all the moves that have been made so far in
-     * the order they were made
+     * A boolean that represents if the currently moving player has a valid move they can make,
+     * and the {@link Position#getVersion()} it was found at
      */
-    private LinkedList<Turn> turns;
+    private boolean hasMove;
+    private long hasMoveVersion = -1;
 
     /**
-     * A boolean that represents if the currently moving player is checking the opponent
+     * A 2d array of Tiles that represents the board. It is null on a copy until a Tile or Piece
+     * of the copy is first needed, since a search only uses the position.
      */
-    private boolean inCheck;
+    private Tile[][] board;
 
     /**
-     * A boolean that represents if the currently moving player is checked
+     * The bitboard representation of the board that the Tiles and Pieces are kept in sync with.
+     * All move generation is done on the position.
      */
-    private boolean checked;
+    private final Position position;
 
     /**
-     * A boolean that represents if the currently moving player has a valid move they can make
+     * Constructor, initializes the board to the starting position so it is ready to be played
      */
-    private boolean hasMove;
+    public Board() {
+        this(START_FEN);
+    }
 
     /**
-     * A 2d array of Tiles that represents the board
+     * Constructor, initializes the board to a position in Forsyth-Edwards Notation
+     * @param fen the position to set up
+     * @throws IllegalArgumentException if the FEN is malformed
      */
-    private Tile[][] board;
+    public Board(String fen) {
+        position = new Position();
+        loadFen(fen);
+    }
 
     /**
-     * Constructor, initializes the board and calls the reset method to reset the board to be
-     * ready to be played
+     * Constructor, initializes the board to a copy of another board's position
+     * @param other the board to copy
      */
-    public Board() {
-        board = new Tile[8][8];
-        reset();
+    private Board(Board other) {
+        position = new Position(other.position);
+    }
+
+    /**
+     * Copies the board. The copy has its own position and shares nothing that can change with
+     * this board, so moves can be made on it (for example by a search on another thread) while
+     * this board is played and painted. Only the position is copied: the Tiles and Pieces of
+     * the copy are created the first time they are needed. The copy starts with no moves to
+     * undo.
+     * @return the copy
+     */
+    public Board copy() {
+        return new Board(this);
+    }
+
+    /**
+     * Sets this board to a copy of another board's position, the same way as {@link #copy()}
+     * but without allocating a new board. Any Tiles and Pieces of this board are dropped.
+     * @param other the board to copy
+     */
+    public void load(Board other) {
+        position.copyFrom(other.position);
+        board = null;
+        currentPiece = null;
+    }
+
+    /**
+     * @return the Tiles of the board, creating them and their Pieces from the position if this
+     * is a copy whose Tiles have not been needed yet
+     */
+    private Tile[][] tiles() {
+        if (board == null) {
+            board = new Tile[8][8];
+            for (int i = 0; i < 8; i++) {
+                for (int j = 0; j < 8; j++) {
+                    board[i][j] = new Tile(i, j);
+                }
+            }
+            syncTiles();
+        }
+        return board;
     }
 
     /**
@@ -63,9 +114,10 @@ public class Board {
      * @return true if the piece moved was a pawn and needs to be promoted
      */
     public boolean playTurn(int x, int y) {
+        Tile[][] board = tiles();
         Tile selectedTile = board[x][y];
         Piece selectedPiece = selectedTile.getPiece();
-        if (selectedPiece != null && selectedPiece.white == whiteTurn) {
+        if (selectedPiece != null && selectedPiece.white == getTurn()) {
             //selects piece if piece is the color of the current player
             currentPiece = selectedPiece;
 //            selectedPiece.removeMovesThatCheckKing();
@@ -83,95 +135,233 @@ public class Board {
     }
 
     /**
-     * Simulates moving forward a turn but does not calculate valid moves. Calculates possible
-     * moves. Used for checking for checks.
+     * Simulates moving forward a turn after {@link #movePiece(Piece, Tile)} but does not
+     * calculate valid moves. Checks can be looked up right away with {@link #isChecked()},
+     * since the position keeps the pieces attacking each king up to date.
      */
     public void stepForward() {
-        whiteTurn = !whiteTurn;
         resetBoardValidMoves();
-        findPotentialMoves();
     }
 
     /**
-     * Simulates undoing a turn but does not calculate valid moves. Calculates possilbe moves.
-     * Used for undoing {@link #stepForward()}.
+     * Simulates undoing a turn but does not calculate valid moves. Used for undoing
+     * {@link #stepForward()}.
      */
     public void stepBackwards() {
-        goToLastTurn();
-        whiteTurn = !whiteTurn;
-        findPotentialMoves();
+        position.unmakeMove();
+        syncTiles();
     }
 
     /**
-     * Goes to the next turn. Toggles the player that's currently playing, and re-calculates all
-     * valid moves for each piece.
+     * Goes to the next turn. The player that's currently playing was already toggled by the
+     * move, so this clears the highlighted Tiles. The valid moves of each piece are computed
+     * the first time they are needed, since the move changed the position's version.
      */
     public void nextTurn() {
-        whiteTurn = !whiteTurn;
         resetBoardValidMoves();
-        updateMovesForPieces();
     }
 
     /**
-     * Undoes a turn. Goes to the previous turn using {@link #goToLastTurn()} and calls
-     * {@link #nextTurn()} to set up the board and re-calculate the valid moves at the
-     * previous turn
+     * Undoes a turn. Unmakes the last move of the position, moves the pieces back to their
+     * Tiles and calls {@link #nextTurn()} so the valid moves at the previous turn are used
      */
     public void undo() {
-        if (turns.isEmpty()) {
+        if (position.getHistorySize() == 0) {
             return;
         }
-        goToLastTurn();
+        position.unmakeMove();
+        syncTiles();
         nextTurn();
     }
 
     /**
-     * Goes to the previous turn by polling from the end of the turns LinkedList and calling the
-     * {@link #goToLastTurn()} method with the turn. Checks if the turn before that turn is a
-     * "double turn" (a castling or en Passant turn), and undoes again if it is.
+     * Gets the last piece moved
+     * @return the piece on the square the last move ended on, or null if no move was made
      */
-    private void goToLastTurn() {
-        if (turns.isEmpty()) {
-            return;
-        }
-        turns.pollLast().goToThisTurn();
-        if (!turns.isEmpty() && turns.peekLast().isDoubleTurn()) {
-            turns.pollLast().goToThisTurn();
+    public Piece getLastPieceMoved() {
+        if (position.getHistorySize() == 0) {
+            return null;
         }
+        return getPiece(Move.to(position.lastMove()));
     }
 
     /**
-     * Gets the last piece moved
-     * @return
+     * @return the last move made as a packed {@link Move}, or Move.NONE if no move was made
      */
-    public Piece getLastPieceMoved() {
-        if (turns.isEmpty()) {
-            return null;
-        }
-        return turns.peekLast().getPieceMoved();
+    public int getLastMove() {
+        return position.lastMove();
     }
 
     /**
-     * Simulates moving the piece, instantiates a new Turn object to store the board state of the
-     * two relevant tiles before the move
+     * Moves the piece by making the move on the position and moving the Pieces to match. A
+     * pawn that reaches the last rank becomes a queen until {@link #promote(int)} is called.
      * @param piece the piece to be moved
      * @param target the target tile to move the piece to
      */
     public void movePiece(Piece piece, Tile target) {
-        Tile prevTile = board[piece.getX()][piece.getY()];
-        turns.add(new Turn(prevTile, target)); //save the current move and the pieces associated
-        piece.moveTo(target.getX(), target.getY());
-        prevTile.setPiece(null);
-        target.setPiece(piece);
+        int from = piece.getSquare();
+        int to = Bitboards.square(target.getX(), target.getY());
+        position.makeMove(position.createMove(from, to, Position.QUEEN));
+        syncTiles();
+    }
+
+    /**
+     * Plays a move in the game, the same as a user selecting the piece and its target and
+     * choosing the piece to promote to. Used to play a move that was searched on a copy of the
+     * board.
+     * @param move the packed {@link Move}
+     * @throws IllegalArgumentException if the move is not a legal move of the current player
+     */
+    public void playMove(int move) {
+        int[] moves = new int[256];
+        int count = generateMoves(moves, 0);
+        int i = 0;
+        while (i < count && moves[i] != move) {
+            i++;
+        }
+        if (i == count) {
+            throw new IllegalArgumentException("Illegal move: " + Move.toString(move));
+        }
+        currentPiece = null;
+        position.makeMove(move);
+        if (board != null) {
+            syncTiles();
+            nextTurn();
+        }
+    }
+
+    /**
+     * Makes a move on the position only, without moving the Pieces or re-calculating their
+     * valid moves. The Tiles and Pieces show the position again once every move made this way
+     * is unmade with {@link #unmakeMove()}. Used by the search, which makes and unmakes moves
+     * without allocating.
+     * @param move the packed {@link Move}, which has to be legal
+     */
+    public void makeMove(int move) {
+        position.makeMove(move);
+    }
+
+    /**
+     * Passes the turn to the other player on the position only, the same way as
+     * {@link #makeMove(int)}. Used by the search for null move pruning. The player to move must
+     * not be in check.
+     */
+    public void makeNullMove() {
+        position.makeNullMove();
+    }
+
+    /**
+     * Unmakes the last move made with {@link #makeMove(int)} or {@link #makeNullMove()}
+     */
+    public void unmakeMove() {
+        position.unmakeMove();
+    }
+
+    /**
+     * Writes every legal move of the current player into an array, including moves made with
+     * {@link #makeMove(int)}
+     * @param moves the array to write the packed moves into, with room for 256 moves after start
+     * @param start the index to write the first move at
+     * @return the index after the last move written
+     */
+    public int generateMoves(int[] moves, int start) {
+        return position.generateMoves(moves, start);
+    }
+
+    /**
+     * Gets the piece on a square of the position, including moves made with
+     * {@link #makeMove(int)}
+     * @param sq the square index
+     * @return the {@link Position} code of the piece, or Position.EMPTY
+     */
+    public int pieceAt(int sq) {
+        return position.pieceAt(sq);
+    }
+
+    /**
+     * Checks if a square is attacked by a player, including moves made with
+     * {@link #makeMove(int)}. Looks up the pieces that attack the square, so no moves are
+     * generated.
+     * @param sq the {@link Bitboards} square index
+     * @param byWhite the player to check the attacks of
+     * @return if a piece of the player attacks the square
+     */
+    public boolean isSquareAttacked(int sq, boolean byWhite) {
+        return position.isSquareAttacked(sq, byWhite);
+    }
+
+    /**
+     * Finds how much material a capture wins or loses once every piece that attacks the square,
+     * including pieces behind other attackers, has joined the exchange. See
+     * {@link Position#see(int)}.
+     * @param move a legal capture of the current player, as a packed {@link Move}
+     * @return the material the current player wins, negative if the capture loses material
+     */
+    public int staticExchange(int move) {
+        return position.see(move);
+    }
+
+    /**
+     * @param white the player to check
+     * @return if the player has a piece other than their king and pawns
+     */
+    public boolean hasNonPawnMaterial(boolean white) {
+        return position.hasNonPawnMaterial(white);
+    }
+
+    /**
+     * Checks if the current player has a valid move, remembering the answer until the position
+     * changes. Stops at the first piece with a legal move instead of finding every move.
+     * @return if the current player has a valid move
+     */
+    private boolean hasMove() {
+        long version = position.getVersion();
+        if (hasMoveVersion != version) {
+            hasMove = position.hasLegalMove();
+            hasMoveVersion = version;
+        }
+        return hasMove;
     }
 
     /**
-     * Removes the piece at the target Tile.
-     * @param target the tile to remove the piece from.
+     * Updates the Tiles and Pieces to match the position after a move was made or unmade.
+     * Pieces that moved are moved to their new Tile so they stay the same objects, and new
+     * Pieces are only created for promotions and captured pieces that come back.
      */
-    public void removePiece(Tile target) {
-        turns.add(new Turn(new Tile(-1, -1), target));
-        target.setPiece(null);
+    private void syncTiles() {
+        if (board == null) {
+            return; // the Tiles are created from the position when they are needed
+        }
+        LinkedList<Piece> removed = new LinkedList<>();
+        for (int sq = 0; sq < 64; sq++) {
+            Tile tile = board[Bitboards.x(sq)][Bitboards.y(sq)];
+            Piece piece = tile.getPiece();
+            if (piece != null && piece.getCode() != position.pieceAt(sq)) {
+                removed.add(piece);
+                tile.setPiece(null);
+            }
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int x = Bitboards.x(sq);
+            int y = Bitboards.y(sq);
+            int code = position.pieceAt(sq);
+            if (code == Position.EMPTY || board[x][y].getPiece() != null) {
+                continue;
+            }
+            Piece piece = null;
+            for (Iterator<Piece> it = removed.iterator(); it.hasNext() && piece == null;) {
+                Piece next = it.next();
+                if (next.getCode() == code) {
+                    piece = next;
+                    it.remove();
+                }
+            }
+            if (piece == null) {
+                piece = createPiece(code, x, y);
+            }
+            piece.moveTo(x, y);
+            board[x][y].setPiece(piece);
+        }
     }
 
     /**
@@ -179,32 +369,233 @@ public class Board {
      * appropraiate starting positions.
      */
     public void reset() {
-        whiteTurn = true;
-        currentPiece = null;
-        turns = new LinkedList<>();
-        hasMove = true;
+        loadFen(START_FEN);
+    }
 
+    /**
+     * Sets up the board from a position in Forsyth-Edwards Notation. Reads the piece placement,
+     * side to move, castling rights, en Passant square and move counters. The counters can be
+     * left out, as in EPD, and then start at 0 and 1. The castling rights stand for the king and
+     * rooks that have not moved yet. The position is read and checked before the board is
+     * changed, so the board keeps its position if the FEN is rejected.
+     * @param fen the position in Forsyth-Edwards Notation
+     * @throws IllegalArgumentException if the FEN is malformed or the position is illegal
+     */
+    public void loadFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        String[] ranks = fields[0].split("/");
+        if (fields.length < 4 || ranks.length != 8
+                || !fields[1].equals("w") && !fields[1].equals("b")) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+        Position parsed = new Position();
         for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board[i][j] = new Tile(i, j);
+            int j = 0;
+            for (char c : ranks[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    j += c - '0';
+                } else if (j < 8) {
+                    int type = "KQRBNP".indexOf(Character.toUpperCase(c));
+                    if (type < 0) {
+                        throw new IllegalArgumentException("Invalid FEN piece: " + c);
+                    }
+                    if (type == Position.PAWN && (i == 0 || i == 7)) {
+                        throw new IllegalArgumentException("Invalid FEN, pawn on the first or "
+                                + "last rank: " + fen);
+                    }
+                    parsed.setPiece(Bitboards.square(i, j),
+                            Position.code(type, Character.isUpperCase(c)));
+                    j++;
+                } else {
+                    throw new IllegalArgumentException("Invalid FEN: " + fen);
+                }
+            }
+            if (j != 8) {
+                throw new IllegalArgumentException("Invalid FEN: " + fen);
             }
         }
-        for (int i = 0; i < 8; i++) {
-            board[1][i].setPiece(new Pawn(false, this, 1, i));
-            board[6][i].setPiece(new Pawn(true, this, 6, i));
+        for (int i = 0; i < 2; i++) {
+            boolean white = i == 0;
+            if (Long.bitCount(parsed.pieces(Position.KING, white)) != 1) {
+                throw new IllegalArgumentException("Invalid FEN, each side needs one king: "
+                        + fen);
+            }
+        }
+        boolean whiteToMove = fields[1].equals("w");
+        parsed.setWhiteToMove(whiteToMove);
+        if (parsed.isSquareAttacked(parsed.kingSquare(!whiteToMove), whiteToMove)) {
+            throw new IllegalArgumentException("Invalid FEN, the side not to move is in check: "
+                    + fen);
+        }
+        parsed.setCastlingRights(parseCastlingRights(parsed, fields[2], fen));
+        parsed.setEnPassantSquare(parseEnPassantSquare(parsed, fields[3], fen));
+        try {
+            parsed.setHalfmoveClock(fields.length > 4 ? Integer.parseInt(fields[4]) : 0);
+            parsed.setFullmoveNumber(fields.length > 5 ? Integer.parseInt(fields[5]) : 1);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid FEN move counters: " + fen);
+        }
+        if (parsed.getHalfmoveClock() < 0 || parsed.getFullmoveNumber() < 1) {
+            throw new IllegalArgumentException("Invalid FEN move counters: " + fen);
+        }
+
+        position.copyFrom(parsed);
+        position.updateLegalMoveMasks(); // finds the pieces checking the king that was set up
+        board = null; // the Tiles are created from the position when they are needed
+        currentPiece = null;
+    }
+
+    /**
+     * Reads the castling rights field of a FEN. Each right needs the king and the rook on the
+     * squares they start on.
+     * @param parsed the position with the pieces of the FEN
+     * @param field the castling rights field, "-" or some of "KQkq"
+     * @param fen the whole FEN, for the error message
+     * @return the castling rights flags
+     * @throws IllegalArgumentException if the field is malformed or a right is impossible
+     */
+    private static int parseCastlingRights(Position parsed, String field, String fen) {
+        if (field.equals("-")) {
+            return 0;
+        }
+        String castling = "KQkq";
+        int[] kings = {4, 4, 60, 60};
+        int[] rooks = {7, 0, 63, 56};
+        int rights = 0;
+        for (char c : field.toCharArray()) {
+            int i = castling.indexOf(c);
+            if (i < 0 || (rights & 1 << i) != 0) {
+                throw new IllegalArgumentException("Invalid FEN castling rights: " + fen);
+            }
+            boolean white = i < 2;
+            if (parsed.pieceAt(kings[i]) != Position.code(Position.KING, white)
+                    || parsed.pieceAt(rooks[i]) != Position.code(Position.ROOK, white)) {
+                throw new IllegalArgumentException("Invalid FEN, castling right " + c
+                        + " without its king and rook: " + fen);
+            }
+            rights |= 1 << i;
+        }
+        return rights;
+    }
+
+    /**
+     * Reads the en Passant field of a FEN. The square has to be empty, on the rank a pawn of
+     * the side not to move skipped, with that pawn in front of it and the square it came from
+     * empty.
+     * @param parsed the position with the pieces and side to move of the FEN
+     * @param field the en Passant field, "-" or a square such as "e3"
+     * @param fen the whole FEN, for the error message
+     * @return the en Passant square, or -1 if there is none
+     * @throws IllegalArgumentException if the field is malformed or the square is impossible
+     */
+    private static int parseEnPassantSquare(Position parsed, String field, String fen) {
+        if (field.equals("-")) {
+            return -1;
+        }
+        boolean whiteToMove = parsed.isWhiteToMove();
+        char rank = whiteToMove ? '6' : '3';
+        if (field.length() != 2 || field.charAt(0) < 'a' || field.charAt(0) > 'h'
+                || field.charAt(1) != rank) {
+            throw new IllegalArgumentException("Invalid FEN en Passant square: " + fen);
+        }
+        int sq = (field.charAt(1) - '1') * 8 + field.charAt(0) - 'a';
+        int pushed = whiteToMove ? sq - 8 : sq + 8;
+        int start = whiteToMove ? sq + 8 : sq - 8;
+        if (parsed.pieceAt(sq) != Position.EMPTY || parsed.pieceAt(start) != Position.EMPTY
+                || parsed.pieceAt(pushed) != Position.code(Position.PAWN, !whiteToMove)) {
+            throw new IllegalArgumentException("Invalid FEN, no pawn that skipped the en Passant "
+                    + "square: " + fen);
+        }
+        return sq;
+    }
+
+    /**
+     * Writes the position in Forsyth-Edwards Notation, the reverse of {@link #loadFen(String)}
+     * @return the position in Forsyth-Edwards Notation
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = position.pieceAt(rank * 8 + file);
+                if (piece == Position.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char c = "KQRBNP".charAt(Position.type(piece));
+                fen.append(Position.isWhite(piece) ? c : Character.toLowerCase(c));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+        fen.append(getTurn() ? " w " : " b ");
+        String castling = "KQkq";
+        int rights = position.getCastlingRights();
+        for (int i = 0; i < castling.length(); i++) {
+            if ((rights & 1 << i) != 0) {
+                fen.append(castling.charAt(i));
+            }
+        }
+        if (rights == 0) {
+            fen.append('-');
         }
-        for (int i = 0; i < 8; i += 7) {
-            boolean isWhite = i == 7;
-            board[i][0].setPiece(new Rook(isWhite, this, i, 0));
-            board[i][1].setPiece(new Knight(isWhite, this, i , 1));
-            board[i][2].setPiece(new Bishop(isWhite, this, i, 2));
-            board[i][3].setPiece(new Queen(isWhite, this, i, 3));
-            board[i][4].setPiece(new King(isWhite, this, i, 4));
-            board[i][5].setPiece(new Bishop(isWhite, this, i, 5));
-            board[i][6].setPiece(new Knight(isWhite, this, i, 6));
-            board[i][7].setPiece(new Rook(isWhite, this, i, 7));
+        int enPassant = position.getEnPassantSquare();
+        if (enPassant >= 0) {
+            fen.append(' ').append((char) ('a' + (enPassant & 7))).append(enPassant / 8 + 1);
+        } else {
+            fen.append(" -");
+        }
+        fen.append(' ').append(position.getHalfmoveClock())
+                .append(' ').append(position.getFullmoveNumber());
+        return fen.toString();
+    }
+
+    /**
+     * Creates the piece for a FEN piece letter (upper case for white)
+     * @param c the FEN piece letter
+     * @param x the x coordinate of the piece
+     * @param y the y coordinate of the piece
+     * @return the new piece
+     */
+    private Piece createPiece(char c, int x, int y) {
+        boolean isWhite = Character.isUpperCase(c);
+        switch (Character.toLowerCase(c)) {
+            case 'k':
+                return new King(isWhite, this, x, y);
+            case 'q':
+                return new Queen(isWhite, this, x, y);
+            case 'r':
+                return new Rook(isWhite, this, x, y);
+            case 'b':
+                return new Bishop(isWhite, this, x, y);
+            case 'n':
+                return new Knight(isWhite, this, x, y);
+            case 'p':
+                return new Pawn(isWhite, this, x, y);
+            default:
+                throw new IllegalArgumentException("Invalid FEN piece: " + c);
         }
-        updateMovesForPieces();
+    }
+
+    /**
+     * Creates the piece for a {@link Position} piece code
+     * @param code the piece code
+     * @param x the x coordinate of the piece
+     * @param y the y coordinate of the piece
+     * @return the new piece
+     */
+    private Piece createPiece(int code, int x, int y) {
+        char c = "KQRBNP".charAt(Position.type(code));
+        return createPiece(Position.isWhite(code) ? c : Character.toLowerCase(c), x, y);
     }
 
     /**
@@ -212,87 +603,114 @@ public class Board {
      * @return a boolean representing if white is moving
      */
     public boolean getTurn() {
-        return whiteTurn;
+        return position.isWhiteToMove();
     }
 
     /**
-     * Handles a check (used when detecting checks) based on who's turn it is and the color of
-     * the piece doing the checking.
-     * @param isWhite a boolean representing the color of the piece that is doing the checking
+     * Gets the Zobrist hash key of the current position. Positions with the same pieces, side to
+     * move, castling rights and en Passant square have the same key.
+     * @return the hash key
      */
-    public void handleCheck(boolean isWhite) {
-        if (isWhite == whiteTurn) {
-            inCheck = true;
-        } else {
-            checked = true;
-        }
+    public long getKey() {
+        return position.getKey();
     }
 
     /**
-     * Sets has move to be true
+     * Gets the key of the current position in the Polyglot opening book format, which opening
+     * books are looked up by. It is computed from the pieces each time, unlike
+     * {@link #getKey()}.
+     * @return the Polyglot key
      */
-    public void setHasMove() {
-        hasMove = true;
+    public long getPolyglotKey() {
+        return PolyglotKey.of(position);
     }
 
     /**
-     * @return if the current player is checking the opponent
+     * @return the number of moves since the last capture or pawn move
+     */
+    public int getHalfmoveClock() {
+        return position.getHalfmoveClock();
+    }
+
+    /**
+     * @return the bitboard of the occupied squares, including moves made with
+     * {@link #makeMove(int)}
+     */
+    public long getOccupied() {
+        return position.occupied();
+    }
+
+    /**
+     * @return the castling rights flags that are still available, see {@link Position}
+     */
+    public int getCastlingRights() {
+        return position.getCastlingRights();
+    }
+
+    /**
+     * @return the bitboard representation of the board
+     */
+    Position getPosition() {
+        return position;
+    }
+
+    /**
+     * @return if the current player is checking the opponent, which can only happen in a
+     * position that was set up that way
      */
     public boolean isInCheck() {
-        return inCheck;
+        return position.isSquareAttacked(position.kingSquare(!getTurn()), getTurn());
     }
 
     /**
-     * @return if the current player is being checked by the opponent
+     * @return if the current player is being checked by the opponent. The position keeps the
+     * pieces attacking the king up to date as moves are made, so this generates no moves.
      */
     public boolean isChecked() {
-        return checked;
+        return position.inCheck();
     }
 
     /**
      * @return if the current player has been checkmated
      */
     public boolean checkMate() {
-        return checked && !hasMove;
+        if (!position.inCheck()) {
+            return false;
+        }
+        return !hasMove();
     }
 
     /**
      * @return if the current player has been stalemated
      */
     public boolean staleMate() {
-        return !checked && !hasMove;
+        if (position.inCheck()) {
+            return false;
+        }
+        return !hasMove();
     }
 
     /**
-     * Updates the valid moves for each piece on the board for the current player
+     * Updates the valid moves for each piece on the board for the current player now, instead
+     * of the first time each piece's moves are asked for
      */
     public void updateMovesForPieces() {
-        hasMove = false;
-        findPotentialMoves();
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece piece = board[i][j].getPiece();
-                if (piece != null && whiteTurn == piece.white) {
-                    piece.findValidMoves();
-                }
-            }
+        long pieces = position.occupancy(getTurn());
+        while (pieces != 0) {
+            getPiece(Long.numberOfTrailingZeros(pieces)).findValidMoves();
+            pieces &= pieces - 1;
         }
     }
 
     /**
-     * Finds the possilbe moves for each piece on the board for the current player. Used to
-     * calculate valid moves when stepping forward to check for checks.
+     * Finds the possible moves for each piece on the board, without taking into account
+     * checking
      */
     public void findPotentialMoves() {
-        checked = false;
-        inCheck = false;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece piece = board[i][j].getPiece();
-                if (piece != null) {
-                    piece.findPossibleMoves();
-                }
-            }
+        long pieces = position.occupied();
+        while (pieces != 0) {
+            getPiece(Long.numberOfTrailingZeros(pieces)).findPossibleMoves();
+            pieces &= pieces - 1;
         }
     }
 
@@ -304,7 +722,7 @@ public class Board {
      * @return a boolean representing if there is a piece there or not
      */
     public boolean containsPiece(int x, int y) {
-        return board[x][y].containsPiece();
+        return position.pieceAt(Bitboards.square(x, y)) != Position.EMPTY;
     }
 
     /**
@@ -314,7 +732,16 @@ public class Board {
      * @return the piece at the Tile
      */
     public Piece getPiece(int x, int y) {
-        return board[x][y].getPiece();
+        return tiles()[x][y].getPiece();
+    }
+
+    /**
+     * Gets the piece on the square of the position
+     * @param sq the square index
+     * @return the piece on the square
+     */
+    private Piece getPiece(int sq) {
+        return tiles()[Bitboards.x(sq)][Bitboards.y(sq)].getPiece();
     }
 
     /**
@@ -324,7 +751,16 @@ public class Board {
      * @return the Tile
      */
     public Tile getTile(int x, int y) {
-        return board[x][y];
+        return tiles()[x][y];
+    }
+
+    /**
+     * Gets the Tile of a square of the position
+     * @param sq the square index
+     * @return the Tile
+     */
+    Tile getTile(int sq) {
+        return tiles()[Bitboards.x(sq)][Bitboards.y(sq)];
     }
 
     /**
@@ -332,6 +768,7 @@ public class Board {
      * validMove to be false for each tile.
      */
     public void resetBoardValidMoves() {
+        Tile[][] board = tiles();
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++) {
                 board[i][j].setValidMove(false);
@@ -340,21 +777,18 @@ public class Board {
     }
 
     /**
-     * Promotes the last moved pawn
-     * @param newPiece an integer corresponding to what to promote the pawn to.
+     * Promotes the last moved pawn by replacing the last move with the promotion to the
+     * chosen piece
+     * @param newPiece an integer corresponding to what to promote the pawn to: 0 for a queen,
+     *                 1 for a rook, 2 for a bishop and 3 for a knight. Any other value keeps
+     *                 the queen.
      */
     public void promote(int newPiece) {
-        Piece pawn = getLastPieceMoved();
-        int x = pawn.getX();
-        int y = pawn.getY();
-        if (newPiece == 0) {
-            board[x][y].setPiece(new Queen(pawn.white, this, x, y));
-        } else if (newPiece == 1) {
-            board[x][y].setPiece(new Rook(pawn.white, this, x, y));
-        } else if (newPiece == 2) {
-            board[x][y].setPiece(new Bishop(pawn.white, this, x, y));
-        } else if (newPiece == 3) {
-            board[x][y].setPiece(new Knight(pawn.white, this, x, y));
+        int move = position.lastMove();
+        if (Move.promotion(move) != 0 && newPiece > 0 && newPiece <= 3) {
+            position.unmakeMove();
+            position.makeMove(Move.of(Move.from(move), Move.to(move), Position.QUEEN + newPiece));
+            syncTiles();
         }
         nextTurn();
     }
@@ -369,52 +803,27 @@ public class Board {
     }
 
     /**
-     * Calculates the score of the board by summing the values of the pieces for both players,
-     * and subtracting depending on for which player we are calculating the score for.
+     * Calculates the score of the board from the values of the pieces for both players and where
+     * the pieces stand, subtracting depending on for which player we are calculating the score
+     * for. The position keeps both terms up to date as moves are made and undone, so this does
+     * not have to look at the pieces. Stalemate is not detected here, since it needs the moves
+     * of the position, which the search generates anyway.
      * @param white the player we are calculating the score for
      * @return the score that was calculated
      */
     public int calculateScoreDifference(boolean white) {
-        if (staleMate()) {
-            return 0;
-        }
-        int whiteScore = 0;
-        int blackScore = 0;
-        for (int i = 0; i < 8; i++) {
-            for (int  j = 0; j < 8; j++) {
-                Piece piece = board[i][j].getPiece();
-                if (piece != null) {
-                    if (piece.getWhite()) {
-                        whiteScore += piece.value;
-                    } else {
-                        blackScore += piece.value;
-                    }
-                }
-            }
-        }
-        if (white) {
-            return whiteScore - blackScore;
-        } else {
-            return blackScore - whiteScore;
-        }
+        return position.evaluate(white);
     }
 
     /**
-     * Calculates the number of moves a particular player has with a particular board position
+     * Calculates the number of moves a particular player has with a particular board position,
+     * counted as the squares its pieces attack that are not occupied by its own pieces so it
+     * works for either player and after {@link #makeMove(int)}
      * @param white the player we want to calculate the number of moves for
      * @return the number of moves the player has
      */
     public int calculateNumMoves(boolean white) {
-        int ret = 0;
-        for (int i = 0 ; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece piece = board[i][j].getPiece();
-                if (piece != null && piece.white == white) {
-                    ret += piece.getNumValidMoveOptions();
-                }
-            }
-        }
-        return ret;
+        return position.mobility(white);
     }
 
 }
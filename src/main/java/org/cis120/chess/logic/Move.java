@@ -0,0 +1,106 @@
+package org.cis120.chess.logic;
+
+/**
+ * Static helpers for moves packed into an int: the square the move starts on in bits 0-5, the
+ * square it ends on in bits 6-11, the kind of move in bits 12-13 and the piece a pawn promotes
+ * to in bits 14-15 (0 for a queen up to 3 for a knight). Squares are {@link Bitboards} square
+ * indexes. A move fits in 16 bits, so it can be stored in the transposition table.
+ */
+public final class Move {
+
+    /**
+     * The value used for no move
+     */
+    public static final int NONE = 0;
+
+    /**
+     * The kinds of moves. Castling moves are stored as the king's move and en Passant moves as
+     * the capturing pawn's move onto the en Passant square.
+     */
+    public static final int NORMAL = 0, PROMOTION = 1, EN_PASSANT = 2, CASTLING = 3;
+
+    private Move() {
+    }
+
+    /**
+     * Creates a normal move
+     * @param from the square the move starts on
+     * @param to the square the move ends on
+     * @return the packed move
+     */
+    public static int of(int from, int to) {
+        return from | to << 6;
+    }
+
+    /**
+     * Creates a move that is normal or a promotion
+     * @param from the square the move starts on
+     * @param to the square the move ends on
+     * @param promotion the {@link Position} type of the piece to promote to, or 0 if it is not a
+     *                  promotion
+     * @return the packed move
+     */
+    public static int of(int from, int to, int promotion) {
+        return promotion == 0 ? of(from, to) : of(from, to, PROMOTION, promotion);
+    }
+
+    /**
+     * Creates a move
+     * @param from the square the move starts on
+     * @param to the square the move ends on
+     * @param flag the kind of move
+     * @param promotion the {@link Position} type of the piece to promote to, ignored if the
+     *                  move is not a promotion
+     * @return the packed move
+     */
+    public static int of(int from, int to, int flag, int promotion) {
+        int ret = from | to << 6 | flag << 12;
+        return flag == PROMOTION ? ret | (promotion - Position.QUEEN) << 14 : ret;
+    }
+
+    /**
+     * @return the square the move starts on
+     */
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    /**
+     * @return the square the move ends on
+     */
+    public static int to(int move) {
+        return move >>> 6 & 63;
+    }
+
+    /**
+     * @return the kind of move
+     */
+    public static int flag(int move) {
+        return move >>> 12 & 3;
+    }
+
+    /**
+     * @return the {@link Position} type of the piece the move promotes to, or 0 if it is not a
+     * promotion
+     */
+    public static int promotion(int move) {
+        return flag(move) == PROMOTION ? (move >>> 14 & 3) + Position.QUEEN : 0;
+    }
+
+    /**
+     * Gets the move in coordinate notation
+     * @param move the move
+     * @return the move as a string, for example "e2e4" or "e7e8q"
+     */
+    public static String toString(int move) {
+        String ret = squareName(from(move)) + squareName(to(move));
+        return promotion(move) == 0 ? ret : ret + " qrbn".charAt(promotion(move));
+    }
+
+    /**
+     * @return the name of the square in algebraic notation, for example "e4"
+     */
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (char) ('1' + (sq >> 3));
+    }
+}
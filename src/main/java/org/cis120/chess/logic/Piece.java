@@ -39,20 +39,31 @@ public abstract class Piece {
     int x, y;
 
     /**
-     * the list of possible moves for the piece (all moves the piece can go to that
-     * does not take into account checking)
+     * The most squares a piece can move to, which is a queen in the middle of an empty board
      */
-    LinkedList<Tile> possibleMoves;
+    static final int MAX_TARGETS = 27;
 
     /**
-     * the list of legal moves (possible moves taking into account checking)
+     * the {@link Bitboards} squares of the possible moves for the piece (all moves the piece can
+     * go to that does not take into account checking) and how many there are. The array is
+     * allocated once and filled in place every time the moves are found.
      */
-    LinkedList<Tile> validMoves;
+    final int[] possibleMoves = new int[MAX_TARGETS];
+    int numPossibleMoves;
 
     /**
-     * the number of moves the piece has moved
+     * the {@link Bitboards} squares of the legal moves (possible moves taking into account
+     * checking) and how many there are, filled in place like possibleMoves. They are found the
+     * first time they are needed at each {@link Position#getVersion()} of the board's position.
      */
-    int numMoves;
+    private final int[] validMoves = new int[MAX_TARGETS];
+    private int numValidMoves;
+    private long validMovesVersion = -1;
+
+    /**
+     * the read-only list of Tiles of the valid moves, created the first time it is asked for
+     */
+    private List<Tile> validMovesView;
 
     /**
      * Constructor method for piece, initializes the piece and its fields
@@ -60,34 +71,17 @@ public abstract class Piece {
      * @param board the board instance the piece is on
      * @param x the integer x coordinate
      * @param y the integer y coordinate
-     * @param value the value associated with the piece
-     * @param id the id of the piece
+     * @param id the id of the piece, which is its {@link Position} piece type
      */
-    Piece(boolean white, Board board, int x, int y, int value, int id) {
+    Piece(boolean white, Board board, int x, int y, int id) {
         this.white = white;
-        this.value = value;
+        this.value = Position.VALUES[id];
         this.board = board;
         this.x = x;
         this.y = y;
-        numMoves = 0;
         this.id = id;
     }
 
-    /**
-     * Sets the nummber of moves the piece has moved
-     * @param numMoves the new value of the number of moves the piece has moved
-     */
-    public void setNumMoves(int numMoves) {
-        this.numMoves = numMoves;
-    }
-
-    /**
-     * @return the number of moves the piece has moved
-     */
-    public int getNumMoves() {
-        return numMoves;
-    }
-
     /**
      * @return the boolean value representing if the piece is white
      */
@@ -103,11 +97,30 @@ public abstract class Piece {
     }
 
     /**
-     * Returns a LinkedList copy of the valid moves for the piece
-     * @return the LinkedList of valid moves
+     * Returns a read-only view of the Tiles of the valid moves for the piece. The view is not a
+     * copy: it changes when the valid moves are found again, so it should be read before the
+     * board moves on.
+     * @return the list of valid moves
      */
-    public LinkedList<Tile> getValidMoves() {
-        return (LinkedList) validMoves.clone();
+    public List<Tile> getValidMoves() {
+        updateValidMoves();
+        if (validMovesView == null) {
+            validMovesView = new AbstractList<Tile>() {
+                @Override
+                public Tile get(int index) {
+                    if (index < 0 || index >= numValidMoves) {
+                        throw new IndexOutOfBoundsException("Index: " + index);
+                    }
+                    return board.getTile(validMoves[index]);
+                }
+
+                @Override
+                public int size() {
+                    return numValidMoves;
+                }
+            };
+        }
+        return validMovesView;
     }
 
     /**
@@ -115,7 +128,22 @@ public abstract class Piece {
      * @return the number of valid moves the piece has
      */
     public int getNumValidMoveOptions() {
-        return validMoves == null ? 0 : validMoves.size();
+        updateValidMoves();
+        return numValidMoves;
+    }
+
+    /**
+     * @return the {@link Position} code of the piece
+     */
+    int getCode() {
+        return Position.code(id, white);
+    }
+
+    /**
+     * @return the {@link Position} square index of the piece
+     */
+    int getSquare() {
+        return Bitboards.square(x, y);
     }
 
     /**
@@ -129,14 +157,14 @@ public abstract class Piece {
     }
 
     /**
-     * Moves the piece to the input position, updates the number of moves the piece has made
+     * Moves the piece to the input position. The move itself (including the rook of a castling
+     * move and the pawn captured en Passant) is made on the board's position.
      * @param x the new x coordinate
      * @param y the new y coordinate
      */
     public void moveTo(int x, int y) {
         this.x = x;
         this.y = y;
-        numMoves++;
     }
 
     /**
@@ -157,7 +185,7 @@ public abstract class Piece {
 
     /**
      * Finds the possible Tiles on the board the piece can move to without
-     * taking into account checking and adds the moves to the possibleMoves LinkedList
+     * taking into account checking and puts their squares in possibleMoves
      */
     public abstract void findPossibleMoves();
 
@@ -166,53 +194,50 @@ public abstract class Piece {
      * this piece to be a valid move
      */
     public void setValidMoves() {
-        for (Tile tile : validMoves) {
-            tile.setValidMove(true);
+        updateValidMoves();
+        for (int i = 0; i < numValidMoves; i++) {
+            board.getTile(validMoves[i]).setValidMove(true);
         }
     }
 
     /**
-     * Finds the valid moves associated with the piece and adds it to the validMoves LinkedList
-     * Updates the hasMove variable for the board to be true if the piece has more than 1 valid move
+     * Finds the valid moves associated with the piece and puts their squares in validMoves.
+     * A piece only has valid moves on its player's turn, and none once it has been captured.
      */
     public void findValidMoves() {
-        validMoves = (LinkedList<Tile>) possibleMoves.clone();
-        ListIterator<Tile> itr = validMoves.listIterator();
-        while (itr.hasNext()) {
-            Tile tile = itr.next();
-            board.movePiece(this, tile); // simulates moving the piece forward
-            board.stepForward(); // calculates the new possible moves for each piece
-            if (board.isInCheck()) {
-                itr.remove(); // removes the move if it puts the board in check (illegal move)
-            }
-            board.stepBackwards(); // undoes the step forward
+        Position position = board.getPosition();
+        validMovesVersion = position.getVersion();
+        numValidMoves = 0;
+        if (white != position.isWhiteToMove() || position.pieceAt(getSquare()) != getCode()) {
+            return;
         }
-        if (validMoves.size() != 0) {
-            board.setHasMove();
+        long targets = position.legalMoves(getSquare());
+        while (targets != 0) {
+            validMoves[numValidMoves++] = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
         }
     }
 
     /**
-     * Attempts to add the Tile associated with the x y coordinates to possibleMoves.
-     * Adds the move if there is no piece on that Tile or the piece is the opposite
-     * color to this piece (capture).
-     * Returns true if the piece can move past this tile; i.e. returns true if the Tile does
-     * not contain a piece
-     * @param x the x coordinate of the target Tile
-     * @param y the y coordinate of the target Tile
-     * @return true if the Tile associated with the x y coordinate does not contain a piece,
-     * false otherwise
+     * Finds the valid moves again if the position changed since they were last found
      */
-    boolean addPossibleMove(int x, int y) {
-        Piece otherPiece = board.getPiece(x, y);
-        // if no pieces here or different color here, can move here
-        if (otherPiece == null || otherPiece.white != white) {
-            possibleMoves.add(board.getTile(x, y));
-            if (otherPiece instanceof King) {
-                board.handleCheck(white);
-            }
+    private void updateValidMoves() {
+        if (validMovesVersion != board.getPosition().getVersion()) {
+            findValidMoves();
+        }
+    }
+
+    /**
+     * Adds the target squares to possibleMoves, skipping squares occupied by a piece of the
+     * same color as this piece
+     * @param targets the bitboard of the squares the piece can move to
+     */
+    void addPossibleMoves(long targets) {
+        targets &= ~board.getPosition().occupancy(white);
+        while (targets != 0) {
+            possibleMoves[numPossibleMoves++] = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
         }
-        return otherPiece == null;
     }
 
     /**
@@ -220,18 +245,7 @@ public abstract class Piece {
      * possibleMoves list. (To be used by Queen and Rook pieces).
      */
     void findPossibleMovesSideways() {
-        for (int i = x + 1; i < 8 && addPossibleMove(i, y); i++) {
-            continue;
-        }
-        for (int i = x - 1; i >= 0 && addPossibleMove(i, y); i--) {
-            continue;
-        }
-        for (int i = y + 1; i < 8 && addPossibleMove(x, i); i++) {
-            continue;
-        }
-        for (int i = y - 1; i >= 0 && addPossibleMove(x, i); i--) {
-            continue;
-        }
+        addPossibleMoves(Bitboards.rookAttacks(getSquare(), board.getPosition().occupied()));
     }
 
     /**
@@ -239,18 +253,7 @@ public abstract class Piece {
      * (To be used by Queen and Bishop pieces).
      */
     void findPossibleMovesDiagonal() {
-        for (int i = 1; x + i < 8 && y + i < 8 && addPossibleMove(x + i, y + i); i++) {
-            continue;
-        }
-        for (int i = 1; x + i < 8 && y - i >= 0 && addPossibleMove(x + i, y - i); i++) {
-            continue;
-        }
-        for (int i = 1; x - i >= 0 && y + i < 8 && addPossibleMove(x - i, y + i); i++) {
-            continue;
-        }
-        for (int i = 1; x - i >= 0 && y - i >= 0 && addPossibleMove(x - i, y - i); i++) {
-            continue;
-        }
+        addPossibleMoves(Bitboards.bishopAttacks(getSquare(), board.getPosition().occupied()));
     }
 }
 
@@ -263,52 +266,25 @@ public abstract class Piece {
  */
 class King extends Piece {
     public King(boolean white, Board board, int x, int y) {
-        super(white, board, x, y, 1000, 0);
-    }
-
-    /**
-     * Overrides moveTo to take into account castling. Checks if King is castling and moves
-     * the associated Rook to the appropriate position if it is
-     * @param x the new x coordinate
-     * @param y the new y coordinate
-     */
-    public void moveTo(int x, int y) {
-        if (numMoves == 0) {
-            if (y - this.y > 1) {
-                //castle on king side, move king side rook
-                board.movePiece(board.getPiece(x, 7), board.getTile(x, 5));
-            } else if (this.y - y > 1) {
-                //castle on queen side, move queen side rook
-                board.movePiece(board.getPiece(x, 0), board.getTile(x, 3));
-            }
-        }
-        super.moveTo(x, y);
+        super(white, board, x, y, Position.KING);
     }
 
     public void findPossibleMoves() {
-        possibleMoves = new LinkedList<>();
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                int nx = x + i;
-                int ny = y + j;
-                if (nx >= 0 && nx < 8 && ny >= 0 && ny < 8) {
-                    addPossibleMove(nx, ny);
-                }
-            }
-        }
+        numPossibleMoves = 0;
+        int sq = getSquare();
+        addPossibleMoves(Bitboards.kingAttacks(sq));
         // check if we can castle and adds to possibleMoves if we can
-        if (numMoves == 0) {
-            if (!board.containsPiece(x, 5) && !board.containsPiece(x, 6) &&
-                    board.getPiece(x, 7) instanceof Rook && board.getPiece(x, 7).numMoves == 0) {
-                addPossibleMove(x, 6);
-            }
-            if (!board.containsPiece(x, 3) && !board.containsPiece(x, 2) &&
-                    !board.containsPiece(x, 1) && board.getPiece(x, 0) instanceof Rook &&
-                    board.getPiece(x, 0).numMoves == 0) {
-                addPossibleMove(x, 2);
-            }
+        Position position = board.getPosition();
+        int rights = position.getCastlingRights();
+        long occupied = position.occupied();
+        if ((rights & (white ? Position.WHITE_KINGSIDE : Position.BLACK_KINGSIDE)) != 0 &&
+                (occupied & (3L << (sq + 1))) == 0) {
+            addPossibleMoves(1L << (sq + 2));
+        }
+        if ((rights & (white ? Position.WHITE_QUEENSIDE : Position.BLACK_QUEENSIDE)) != 0 &&
+                (occupied & (7L << (sq - 3))) == 0) {
+            addPossibleMoves(1L << (sq - 2));
         }
-
     }
 }
 
@@ -317,11 +293,11 @@ class King extends Piece {
  */
 class Queen extends Piece {
     public Queen(boolean white, Board board, int x, int y) {
-        super(white, board, x, y, 90, 1);
+        super(white, board, x, y, Position.QUEEN);
     }
 
     public void findPossibleMoves() {
-        possibleMoves = new LinkedList<>();
+        numPossibleMoves = 0;
         findPossibleMovesDiagonal();
         findPossibleMovesSideways();
     }
@@ -332,11 +308,11 @@ class Queen extends Piece {
  */
 class Rook extends Piece {
     public Rook(boolean white, Board board, int x, int y) {
-        super(white, board, x, y, 50, 2);
+        super(white, board, x, y, Position.ROOK);
     }
 
     public void findPossibleMoves() {
-        possibleMoves = new LinkedList<>();
+        numPossibleMoves = 0;
         findPossibleMovesSideways();
     }
 }
@@ -346,11 +322,11 @@ class Rook extends Piece {
  */
 class Bishop extends Piece {
     public Bishop(boolean white, Board board, int x, int y) {
-        super(white, board, x, y, 30, 3);
+        super(white, board, x, y, Position.BISHOP);
     }
 
     public void findPossibleMoves() {
-        possibleMoves = new LinkedList<>();
+        numPossibleMoves = 0;
         findPossibleMovesDiagonal();
     }
 }
@@ -360,20 +336,12 @@ class Bishop extends Piece {
  */
 class Knight extends Piece {
     public Knight(boolean white, Board board, int x, int y) {
-        super(white, board, x, y, 30, 4);
+        super(white, board, x, y, Position.KNIGHT);
     }
 
     public void findPossibleMoves() {
-        possibleMoves = new LinkedList<>();
-        int[] dx = {2, 2, -2, -2, 1, -1, 1, -1};
-        int[] dy = {1, -1, 1, -1, 2, 2, -2, -2};
-        for (int i = 0; i < 8; i++) {
-            int nx = dx[i] + x;
-            int ny = dy[i] + y;
-            if (nx >= 0 && nx < 8 && ny >= 0 && ny < 8) {
-                addPossibleMove(nx, ny);
-            }
-        }
+        numPossibleMoves = 0;
+        addPossibleMoves(Bitboards.knightAttacks(getSquare()));
     }
 }
 
@@ -382,58 +350,31 @@ class Knight extends Piece {
  */
 class Pawn extends Piece {
     public Pawn(boolean white, Board board, int x, int y) {
-        super(white, board, x, y, 10, 5);
-    }
-
-    /**
-     * Overrides moveTo to handle en Passant case.
-     * @param x the new x coordinate
-     * @param y the new y coordinate
-     */
-    public void moveTo(int x, int y) {
-        if (y != this.y && !board.containsPiece(x, y)) {
-            board.removePiece(board.getTile(this.x, y));
-        }
-        super.moveTo(x, y);
+        super(white, board, x, y, Position.PAWN);
     }
 
     public void findPossibleMoves() {
-        possibleMoves = new LinkedList<>();
-        int dx = white ? -1 : 1;
-        int nx = x + dx;
-        if (nx >= 8 || nx < 0) {
+        numPossibleMoves = 0;
+        Position position = board.getPosition();
+        int sq = getSquare();
+        int forward = white ? 8 : -8;
+        if (sq + forward < 0 || sq + forward >= 64) {
             return;
         }
-        //diagonal capture
-        if (y + 1 < 8 && board.containsPiece(nx, y + 1)) {
-            addPossibleMove(nx, y + 1);
-        }
-        if (y - 1 >= 0 && board.containsPiece(nx, y - 1)) {
-            addPossibleMove(nx, y - 1);
-        }
-        //forward one
-        if (!board.containsPiece(nx, y)) {
-            addPossibleMove(nx, y);
+        //diagonal capture, including en passant onto the square the opponent's pawn skipped
+        long captures = position.occupancy(!white);
+        int enPassant = position.getEnPassantSquare();
+        if (enPassant >= 0 && enPassant >> 3 == (white ? 5 : 2)) {
+            captures |= 1L << enPassant;
         }
-        //forward two if first move
-        if (numMoves == 0 && !board.containsPiece(nx, y)
-                && !board.containsPiece(x + 2 * dx, y)) {
-            addPossibleMove(x + 2 * dx, y);
-        }
-        //en passant
-        if (y + 1 < 8) {
-            Piece piece = board.getPiece(x, y + 1);
-            if (piece instanceof Pawn &&
-                    piece == board.getLastPieceMoved() && piece.numMoves == 1) {
-                addPossibleMove(nx, y + 1);
-            }
-        }
-        if (y - 1 >= 0) {
-            Piece piece = board.getPiece(x, y - 1);
-            if (piece instanceof Pawn &&
-                    piece == board.getLastPieceMoved() && piece.numMoves == 1) {
-                addPossibleMove(nx, y - 1);
+        long targets = Bitboards.pawnAttacks(sq, white) & captures;
+        //forward one, and forward two if on the starting rank
+        if (position.pieceAt(sq + forward) == Position.EMPTY) {
+            targets |= 1L << (sq + forward);
+            if (x == (white ? 6 : 1) && position.pieceAt(sq + 2 * forward) == Position.EMPTY) {
+                targets |= 1L << (sq + 2 * forward);
             }
         }
+        addPossibleMoves(targets);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,155 @@
+package org.cis120.chess.logic;
+
+/**
+ * The piece-square tables of the evaluation: a bonus or penalty for each piece type on each
+ * square, with one table for the middlegame and one for the endgame. Scores are in the same
+ * units as {@link Position#VALUES} (a pawn is 10). {@link Position} keeps the sums of the tables
+ * for each side up to date as pieces are set, and blends the two sums by the game phase, which
+ * goes from {@link #MAX_PHASE} with all the minor and major pieces on the board down to 0 with
+ * only kings and pawns.
+ *
+ * The tables are written from white's point of view with rank 8 first, the way a board is
+ * printed, and are flipped for black.
+ */
+final class PieceSquareTables {
+
+    /**
+     * The game phase of the starting position, and the phase each piece type adds
+     */
+    static final int MAX_PHASE = 24;
+    static final int[] PHASE = {0, 4, 2, 1, 1, 0};
+
+    private static final int[] KING_MIDDLEGAME = {
+        -3, -4, -4, -5, -5, -4, -4, -3,
+        -3, -4, -4, -5, -5, -4, -4, -3,
+        -3, -4, -4, -5, -5, -4, -4, -3,
+        -3, -4, -4, -5, -5, -4, -4, -3,
+        -2, -3, -3, -4, -4, -3, -3, -2,
+        -1, -2, -2, -2, -2, -2, -2, -1,
+         2,  2,  0,  0,  0,  0,  2,  2,
+         2,  3,  1,  0,  0,  1,  3,  2
+    };
+
+    private static final int[] KING_ENDGAME = {
+        -5, -4, -3, -2, -2, -3, -4, -5,
+        -3, -2, -1,  0,  0, -1, -2, -3,
+        -3, -1,  2,  3,  3,  2, -1, -3,
+        -3, -1,  3,  4,  4,  3, -1, -3,
+        -3, -1,  3,  4,  4,  3, -1, -3,
+        -3, -1,  2,  3,  3,  2, -1, -3,
+        -3, -3,  0,  0,  0,  0, -3, -3,
+        -5, -3, -3, -3, -3, -3, -3, -5
+    };
+
+    private static final int[] QUEEN = {
+        -2, -1, -1,  0,  0, -1, -1, -2,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+        -1,  0,  1,  1,  1,  1,  0, -1,
+         0,  0,  1,  1,  1,  1,  0,  0,
+         0,  0,  1,  1,  1,  1,  0,  0,
+        -1,  0,  1,  1,  1,  1,  0, -1,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+        -2, -1, -1,  0,  0, -1, -1, -2
+    };
+
+    private static final int[] ROOK_MIDDLEGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+         1,  2,  2,  2,  2,  2,  2,  1,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+         0,  0,  0,  1,  1,  0,  0,  0
+    };
+
+    private static final int[] ROOK_ENDGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+         1,  1,  1,  1,  1,  1,  1,  1,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0
+    };
+
+    private static final int[] BISHOP = {
+        -2, -1, -1, -1, -1, -1, -1, -2,
+        -1,  0,  0,  0,  0,  0,  0, -1,
+        -1,  0,  1,  1,  1,  1,  0, -1,
+        -1,  1,  1,  1,  1,  1,  1, -1,
+        -1,  0,  1,  1,  1,  1,  0, -1,
+        -1,  1,  1,  1,  1,  1,  1, -1,
+        -1,  1,  0,  0,  0,  0,  1, -1,
+        -2, -1, -1, -1, -1, -1, -1, -2
+    };
+
+    private static final int[] KNIGHT = {
+        -5, -4, -3, -3, -3, -3, -4, -5,
+        -4, -2,  0,  0,  0,  0, -2, -4,
+        -3,  0,  1,  2,  2,  1,  0, -3,
+        -3,  0,  2,  2,  2,  2,  0, -3,
+        -3,  0,  2,  2,  2,  2,  0, -3,
+        -3,  0,  1,  2,  2,  1,  0, -3,
+        -4, -2,  0,  1,  1,  0, -2, -4,
+        -5, -4, -3, -3, -3, -3, -4, -5
+    };
+
+    private static final int[] PAWN_MIDDLEGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+         5,  5,  5,  5,  5,  5,  5,  5,
+         1,  1,  2,  3,  3,  2,  1,  1,
+         0,  0,  1,  2,  2,  1,  0,  0,
+         0,  0,  0,  2,  2,  0,  0,  0,
+         0,  0,  0,  1,  1,  0,  0,  0,
+         0,  1,  1, -2, -2,  1,  1,  0,
+         0,  0,  0,  0,  0,  0,  0,  0
+    };
+
+    private static final int[] PAWN_ENDGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+         8,  8,  8,  8,  8,  8,  8,  8,
+         5,  5,  5,  5,  5,  5,  5,  5,
+         3,  3,  3,  3,  3,  3,  3,  3,
+         1,  1,  1,  1,  1,  1,  1,  1,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0
+    };
+
+    /**
+     * The tables of each piece type, indexed by [type][table index]
+     */
+    private static final int[][] MIDDLEGAME = {
+        KING_MIDDLEGAME, QUEEN, ROOK_MIDDLEGAME, BISHOP, KNIGHT, PAWN_MIDDLEGAME
+    };
+    private static final int[][] ENDGAME = {
+        KING_ENDGAME, QUEEN, ROOK_ENDGAME, BISHOP, KNIGHT, PAWN_ENDGAME
+    };
+
+    private PieceSquareTables() {
+    }
+
+    /**
+     * @return the index into the tables of a square for a piece of the color. The tables start
+     * at a8, so white's squares are flipped vertically and black's are used as they are.
+     */
+    private static int index(int sq, boolean white) {
+        return white ? sq ^ 56 : sq;
+    }
+
+    /**
+     * @return the middlegame score of the piece with the given code on the square
+     */
+    static int middlegame(int code, int sq) {
+        return MIDDLEGAME[Position.type(code)][index(sq, Position.isWhite(code))];
+    }
+
+    /**
+     * @return the endgame score of the piece with the given code on the square
+     */
+    static int endgame(int code, int sq) {
+        return ENDGAME[Position.type(code)][index(sq, Position.isWhite(code))];
+    }
+}
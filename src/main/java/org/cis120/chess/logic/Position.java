@@ -0,0 +1,1031 @@
+package org.cis120.chess.logic;
+
+import java.util.Arrays;
+
+/**
+ * The bitboard representation of a chess position. Stores one bitboard per piece type and
+ * color, the occupancy of each side, a mailbox of the piece on every square, the side to move,
+ * the castling rights and the en Passant square. {@link Board} keeps its Tiles and Pieces in sync
+ * with a {@code Position} and all move generation is done on the bitboards.
+ *
+ * Pieces are stored as an integer code, which is the piece type plus {@link #BLACK} for black
+ * pieces. The piece types share their ordering with the unicode chess symbols.
+ */
+public class Position {
+
+    /**
+     * The piece types
+     */
+    public static final int KING = 0, QUEEN = 1, ROOK = 2, BISHOP = 3, KNIGHT = 4, PAWN = 5;
+
+    /**
+     * The offset added to a piece type to get the code of the black piece
+     */
+    public static final int BLACK = 6;
+
+    /**
+     * The code of an empty square
+     */
+    public static final int EMPTY = -1;
+
+    /**
+     * The value of each piece type (used for minimax algorithm)
+     */
+    public static final int[] VALUES = {1000, 90, 50, 30, 30, 10};
+
+    /**
+     * The castling rights flags
+     */
+    public static final int WHITE_KINGSIDE = 1, WHITE_QUEENSIDE = 2, BLACK_KINGSIDE = 4,
+            BLACK_QUEENSIDE = 8, ALL_CASTLING = 15;
+
+    /**
+     * The castling rights that survive a move from or to each square. Moving the king or a rook
+     * from its starting square, or capturing a rook on its starting square, loses the
+     * associated rights.
+     */
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_MASK, ALL_CASTLING);
+        CASTLING_MASK[0] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[4] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[7] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[56] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[60] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[63] &= ~BLACK_KINGSIDE;
+    }
+
+    /**
+     * The random Zobrist keys that are xored together to get the hash key of a position: one per
+     * piece code and square, one per combination of castling rights, one per en Passant file and
+     * one for black to move. Generated from a fixed seed so keys are the same on every run.
+     */
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    private static final long[] CASTLING_KEYS = new long[16];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long SIDE_KEY;
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                PIECE_KEYS[piece][sq] = splitMix(seed += 0x9E3779B97F4A7C15L);
+            }
+        }
+        // no castling rights has a key of 0 so an empty position has a key of 0
+        for (int i = 1; i < 16; i++) {
+            CASTLING_KEYS[i] = splitMix(seed += 0x9E3779B97F4A7C15L);
+        }
+        for (int i = 0; i < 8; i++) {
+            EN_PASSANT_KEYS[i] = splitMix(seed += 0x9E3779B97F4A7C15L);
+        }
+        SIDE_KEY = splitMix(seed + 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Mixes the bits of a number (the SplitMix64 finalizer), used to generate the Zobrist keys
+     */
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The bitboard of each piece, indexed by piece code
+     */
+    private final long[] pieces = new long[12];
+
+    /**
+     * The squares occupied by white pieces and black pieces
+     */
+    private long whiteOccupancy, blackOccupancy;
+
+    /**
+     * The code of the piece on each square, or EMPTY
+     */
+    private final int[] mailbox = new int[64];
+
+    /**
+     * A boolean keeping track of if it is white's turn or not
+     */
+    private boolean whiteToMove;
+
+    /**
+     * The castling rights that are still available
+     */
+    private int castlingRights;
+
+    /**
+     * The square a pawn can capture onto en Passant, or -1 if there is none
+     */
+    private int enPassantSquare;
+
+    /**
+     * The Zobrist hash key of the position, updated incrementally on every change
+     */
+    private long key;
+
+    /**
+     * The evaluation terms of each side, indexed by 0 for white and 1 for black: the total value
+     * of its pieces and the sums of the middlegame and endgame {@link PieceSquareTables} of its
+     * pieces. Updated incrementally on every change, like the key.
+     */
+    private final int[] material = new int[2];
+    private final int[] middlegame = new int[2];
+    private final int[] endgame = new int[2];
+
+    /**
+     * The game phase, the sum of the {@link PieceSquareTables#PHASE} of every piece
+     */
+    private int phase;
+
+    /**
+     * The pieces checking the king of the side to move. Kept up to date by
+     * {@link #makeMove(int)} and {@link #unmakeMove()}, so checks are known without generating
+     * any moves.
+     */
+    private long checkers;
+
+    /**
+     * The squares a non-king move has to land on to resolve a check (every square if not in
+     * check), and the pieces of the side to move that are pinned to their king. Computed by
+     * {@link #updateLegalMoveMasks()}.
+     */
+    private long checkMask, pinned;
+
+    /**
+     * The move counters of Forsyth-Edwards Notation: the number of moves since the last capture
+     * or pawn move, for the fifty move rule, and the number of the current full move, which
+     * starts at 1 and goes up after every move of black. They are not part of the key.
+     */
+    private int halfmoveClock;
+    private int fullmoveNumber;
+
+    /**
+     * A counter that changes every time the position changes and never goes back to an earlier
+     * value, even when a move is unmade, so anything computed from the position can be
+     * remembered along with the version it was computed at
+     */
+    private long version;
+
+    /**
+     * The version the legal move masks were computed at
+     */
+    private long masksVersion = -1;
+
+    /**
+     * The number of undo entries the history starts with room for
+     */
+    private static final int HISTORY_CAPACITY = 256;
+
+    /**
+     * The undo stack of the moves made on the position. Entry i holds the i-th move, the code of
+     * the piece it captured (EMPTY for none or en Passant), and the castling rights and en
+     * Passant square before it. The arrays are allocated once and only grow in games longer than
+     * their capacity, so making and unmaking moves does not allocate. The checking pieces and
+     * the halfmove clock before each move are kept too, so unmaking a move does not have to
+     * find them again.
+     */
+    private int[] moveHistory = new int[HISTORY_CAPACITY];
+    private int[] capturedHistory = new int[HISTORY_CAPACITY];
+    private int[] castlingHistory = new int[HISTORY_CAPACITY];
+    private int[] enPassantHistory = new int[HISTORY_CAPACITY];
+    private long[] checkersHistory = new long[HISTORY_CAPACITY];
+    private int[] clockHistory = new int[HISTORY_CAPACITY];
+
+    /**
+     * The number of moves on the undo stack
+     */
+    private int historySize;
+
+    /**
+     * The gains of each capture of a static exchange evaluation, allocated once so
+     * {@link #see(int)} does not allocate
+     */
+    private final int[] exchangeGains = new int[33];
+
+    /**
+     * Constructor, creates an empty position
+     */
+    public Position() {
+        clear();
+    }
+
+    /**
+     * Constructor, creates a copy of a position that shares nothing with it. The copy starts
+     * with no moves to unmake.
+     * @param other the position to copy
+     */
+    public Position(Position other) {
+        copyFrom(other);
+    }
+
+    /**
+     * Sets this position to a copy of another position, without allocating. The undo stack of
+     * this position is cleared.
+     * @param other the position to copy
+     */
+    public void copyFrom(Position other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        System.arraycopy(other.mailbox, 0, mailbox, 0, mailbox.length);
+        System.arraycopy(other.material, 0, material, 0, material.length);
+        System.arraycopy(other.middlegame, 0, middlegame, 0, middlegame.length);
+        System.arraycopy(other.endgame, 0, endgame, 0, endgame.length);
+        whiteOccupancy = other.whiteOccupancy;
+        blackOccupancy = other.blackOccupancy;
+        whiteToMove = other.whiteToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        key = other.key;
+        phase = other.phase;
+        checkers = other.checkers;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        historySize = 0;
+        version++;
+    }
+
+    /**
+     * Removes every piece and resets the state to white to move with no castling rights, at the
+     * first move
+     */
+    public void clear() {
+        Arrays.fill(pieces, 0);
+        Arrays.fill(mailbox, EMPTY);
+        whiteOccupancy = 0;
+        blackOccupancy = 0;
+        whiteToMove = true;
+        castlingRights = 0;
+        enPassantSquare = -1;
+        key = 0;
+        Arrays.fill(material, 0);
+        Arrays.fill(middlegame, 0);
+        Arrays.fill(endgame, 0);
+        phase = 0;
+        checkers = 0;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        historySize = 0;
+        version++;
+    }
+
+    /**
+     * Gets the code of a piece
+     * @param type the type of the piece
+     * @param white the color of the piece
+     * @return the code of the piece
+     */
+    public static int code(int type, boolean white) {
+        return white ? type : type + BLACK;
+    }
+
+    /**
+     * @return the type of the piece with the given code
+     */
+    public static int type(int code) {
+        return code < BLACK ? code : code - BLACK;
+    }
+
+    /**
+     * @return if the piece with the given code is white
+     */
+    public static boolean isWhite(int code) {
+        return code < BLACK;
+    }
+
+    /**
+     * @return the code of the piece on the square, or EMPTY
+     */
+    public int pieceAt(int sq) {
+        return mailbox[sq];
+    }
+
+    /**
+     * Sets the piece on a square, replacing whatever was there before. Updates the key and the
+     * evaluation terms.
+     * @param sq the square
+     * @param piece the code of the new piece, or EMPTY to clear the square
+     */
+    public void setPiece(int sq, int piece) {
+        int old = mailbox[sq];
+        if (old == piece) {
+            return;
+        }
+        version++;
+        long bit = 1L << sq;
+        if (old != EMPTY) {
+            updateEvaluation(old, sq, -1);
+            key ^= PIECE_KEYS[old][sq];
+            pieces[old] &= ~bit;
+            if (old < BLACK) {
+                whiteOccupancy &= ~bit;
+            } else {
+                blackOccupancy &= ~bit;
+            }
+        }
+        if (piece != EMPTY) {
+            updateEvaluation(piece, sq, 1);
+            key ^= PIECE_KEYS[piece][sq];
+            pieces[piece] |= bit;
+            if (piece < BLACK) {
+                whiteOccupancy |= bit;
+            } else {
+                blackOccupancy |= bit;
+            }
+        }
+        mailbox[sq] = piece;
+    }
+
+    /**
+     * Adds or removes the evaluation terms of a piece on a square
+     * @param piece the code of the piece
+     * @param sq the square
+     * @param sign 1 to add the piece, -1 to remove it
+     */
+    private void updateEvaluation(int piece, int sq, int sign) {
+        int side = piece < BLACK ? 0 : 1;
+        material[side] += sign * VALUES[type(piece)];
+        middlegame[side] += sign * PieceSquareTables.middlegame(piece, sq);
+        endgame[side] += sign * PieceSquareTables.endgame(piece, sq);
+        phase += sign * PieceSquareTables.PHASE[type(piece)];
+    }
+
+    /**
+     * @return the bitboard of the piece with the given code
+     */
+    public long pieces(int code) {
+        return pieces[code];
+    }
+
+    /**
+     * @return the bitboard of the pieces of the given type and color
+     */
+    public long pieces(int type, boolean white) {
+        return pieces[code(type, white)];
+    }
+
+    /**
+     * @return the squares occupied by the pieces of the given color
+     */
+    public long occupancy(boolean white) {
+        return white ? whiteOccupancy : blackOccupancy;
+    }
+
+    /**
+     * @return the squares occupied by any piece
+     */
+    public long occupied() {
+        return whiteOccupancy | blackOccupancy;
+    }
+
+    /**
+     * @return the square of the king of the given color, or -1 if there is no king
+     */
+    public int kingSquare(boolean white) {
+        long king = pieces[code(KING, white)];
+        return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
+    }
+
+    /**
+     * @return if it is white's turn
+     */
+    public boolean isWhiteToMove() {
+        return whiteToMove;
+    }
+
+    /**
+     * Sets the side to move
+     * @param whiteToMove true if it is white's turn
+     */
+    public void setWhiteToMove(boolean whiteToMove) {
+        if (this.whiteToMove != whiteToMove) {
+            key ^= SIDE_KEY;
+        }
+        this.whiteToMove = whiteToMove;
+        version++;
+    }
+
+    /**
+     * @return the castling rights flags that are still available
+     */
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    /**
+     * Sets the castling rights flags
+     * @param castlingRights the new castling rights
+     */
+    public void setCastlingRights(int castlingRights) {
+        key ^= CASTLING_KEYS[this.castlingRights] ^ CASTLING_KEYS[castlingRights];
+        this.castlingRights = castlingRights;
+        version++;
+    }
+
+    /**
+     * Removes the castling rights lost by a move between the two squares
+     * @param from the square the piece moved from
+     * @param to the square the piece moved to
+     */
+    public void updateCastlingRights(int from, int to) {
+        setCastlingRights(castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to]);
+    }
+
+    /**
+     * @return the en Passant target square, or -1 if there is none
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    /**
+     * Sets the en Passant target square
+     * @param enPassantSquare the square, or -1 if there is none
+     */
+    public void setEnPassantSquare(int enPassantSquare) {
+        if (this.enPassantSquare >= 0) {
+            key ^= EN_PASSANT_KEYS[this.enPassantSquare & 7];
+        }
+        if (enPassantSquare >= 0) {
+            key ^= EN_PASSANT_KEYS[enPassantSquare & 7];
+        }
+        this.enPassantSquare = enPassantSquare;
+        version++;
+    }
+
+    /**
+     * @return the number of moves since the last capture or pawn move
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Sets the number of moves since the last capture or pawn move
+     * @param halfmoveClock the number of moves
+     */
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    /**
+     * @return the number of the current full move, starting at 1
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Sets the number of the current full move
+     * @param fullmoveNumber the number, starting at 1
+     */
+    public void setFullmoveNumber(int fullmoveNumber) {
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    /**
+     * @return the Zobrist hash key of the position
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * @return the number of moves that can be unmade
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * @return the last move made, or Move.NONE if there is none
+     */
+    public int lastMove() {
+        return historySize == 0 ? Move.NONE : moveHistory[historySize - 1];
+    }
+
+    /**
+     * Creates the move between two squares with the right kind for the piece on the start
+     * square: castling for a king moving two squares, en Passant for a pawn moving diagonally
+     * onto the en Passant square and a promotion for a pawn reaching the last rank.
+     * @param from the square the move starts on
+     * @param to the square the move ends on
+     * @param promotion the type of the piece to promote to if the move is a promotion
+     * @return the packed move
+     */
+    public int createMove(int from, int to, int promotion) {
+        int type = type(mailbox[from]);
+        if (type == KING && Math.abs(to - from) == 2) {
+            return Move.of(from, to, Move.CASTLING, 0);
+        } else if (type == PAWN && (to >> 3 == 0 || to >> 3 == 7)) {
+            return Move.of(from, to, Move.PROMOTION, promotion);
+        } else if (type == PAWN && to == enPassantSquare && (to & 7) != (from & 7)) {
+            return Move.of(from, to, Move.EN_PASSANT, 0);
+        }
+        return Move.of(from, to);
+    }
+
+    /**
+     * Makes a move and pushes what is needed to unmake it onto the undo stack. The move has to
+     * be legal in the position.
+     * @param move the packed move
+     */
+    public void makeMove(int move) {
+        if (historySize == moveHistory.length) {
+            growHistory();
+        }
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flag = Move.flag(move);
+        int piece = mailbox[from];
+        boolean white = isWhite(piece);
+        moveHistory[historySize] = move;
+        capturedHistory[historySize] = mailbox[to];
+        castlingHistory[historySize] = castlingRights;
+        enPassantHistory[historySize] = enPassantSquare;
+        checkersHistory[historySize] = checkers;
+        clockHistory[historySize] = halfmoveClock;
+        historySize++;
+        boolean reset = type(piece) == PAWN || mailbox[to] != EMPTY;
+        halfmoveClock = reset ? 0 : halfmoveClock + 1;
+        if (!white) {
+            fullmoveNumber++;
+        }
+
+        if (flag == Move.EN_PASSANT) {
+            setPiece(white ? to - 8 : to + 8, EMPTY);
+        } else if (flag == Move.CASTLING) {
+            // the rook jumps over the king from the corner on the side the king moved to
+            int rook = to > from ? from + 3 : from - 4;
+            setPiece((from + to) / 2, mailbox[rook]);
+            setPiece(rook, EMPTY);
+        }
+        setPiece(from, EMPTY);
+        setPiece(to, flag == Move.PROMOTION ? code(Move.promotion(move), white) : piece);
+        updateCastlingRights(from, to);
+        boolean doublePush = type(piece) == PAWN && Math.abs(to - from) == 16;
+        setEnPassantSquare(doublePush ? (from + to) / 2 : -1);
+        setWhiteToMove(!white);
+        checkers = attackersTo(kingSquare(!white), occupied()) & occupancy(white);
+    }
+
+    /**
+     * Passes the turn to the other player without moving a piece (a null move), which the search
+     * uses to test if a position is so good that even giving the opponent a free move does not
+     * help them. It is pushed onto the undo stack as Move.NONE and undone with
+     * {@link #unmakeMove()}.
+     */
+    public void makeNullMove() {
+        if (historySize == moveHistory.length) {
+            growHistory();
+        }
+        moveHistory[historySize] = Move.NONE;
+        capturedHistory[historySize] = EMPTY;
+        castlingHistory[historySize] = castlingRights;
+        enPassantHistory[historySize] = enPassantSquare;
+        checkersHistory[historySize] = checkers;
+        clockHistory[historySize] = halfmoveClock;
+        historySize++;
+        setEnPassantSquare(-1);
+        setWhiteToMove(!whiteToMove);
+        checkers = 0; // the side that did not move is never in check
+    }
+
+    /**
+     * Unmakes the last move on the undo stack, restoring the position exactly as it was before
+     * the move
+     */
+    public void unmakeMove() {
+        historySize--;
+        int move = moveHistory[historySize];
+        checkers = checkersHistory[historySize];
+        halfmoveClock = clockHistory[historySize];
+        if (move == Move.NONE) {
+            setWhiteToMove(!whiteToMove);
+            setEnPassantSquare(enPassantHistory[historySize]);
+            return;
+        }
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flag = Move.flag(move);
+        boolean white = !whiteToMove;
+        if (!white) {
+            fullmoveNumber--;
+        }
+
+        setWhiteToMove(white);
+        setPiece(from, flag == Move.PROMOTION ? code(PAWN, white) : mailbox[to]);
+        setPiece(to, capturedHistory[historySize]);
+        if (flag == Move.EN_PASSANT) {
+            setPiece(white ? to - 8 : to + 8, code(PAWN, !white));
+        } else if (flag == Move.CASTLING) {
+            int rook = to > from ? from + 3 : from - 4;
+            setPiece(rook, mailbox[(from + to) / 2]);
+            setPiece((from + to) / 2, EMPTY);
+        }
+        setCastlingRights(castlingHistory[historySize]);
+        setEnPassantSquare(enPassantHistory[historySize]);
+    }
+
+    /**
+     * Doubles the size of the undo stack
+     */
+    private void growHistory() {
+        int size = moveHistory.length * 2;
+        moveHistory = Arrays.copyOf(moveHistory, size);
+        capturedHistory = Arrays.copyOf(capturedHistory, size);
+        castlingHistory = Arrays.copyOf(castlingHistory, size);
+        enPassantHistory = Arrays.copyOf(enPassantHistory, size);
+        checkersHistory = Arrays.copyOf(checkersHistory, size);
+        clockHistory = Arrays.copyOf(clockHistory, size);
+    }
+
+    /**
+     * Gets the squares attacked by the piece on a square. For pawns this is only the diagonal
+     * capture squares.
+     * @param sq the square of the piece
+     * @return the attacked squares, or 0 if the square is empty
+     */
+    public long attacks(int sq) {
+        int piece = mailbox[sq];
+        if (piece == EMPTY) {
+            return 0;
+        }
+        switch (type(piece)) {
+            case KING:
+                return Bitboards.kingAttacks(sq);
+            case QUEEN:
+                return Bitboards.queenAttacks(sq, occupied());
+            case ROOK:
+                return Bitboards.rookAttacks(sq, occupied());
+            case BISHOP:
+                return Bitboards.bishopAttacks(sq, occupied());
+            case KNIGHT:
+                return Bitboards.knightAttacks(sq);
+            default:
+                return Bitboards.pawnAttacks(sq, isWhite(piece));
+        }
+    }
+
+    /**
+     * Gets every piece of either color that attacks a square
+     * @param sq the square
+     * @param occupied the occupied squares to use for sliding pieces
+     * @return the bitboard of the attacking pieces
+     */
+    private long attackersTo(int sq, long occupied) {
+        long rooks = pieces[ROOK] | pieces[ROOK + BLACK] | pieces[QUEEN] | pieces[QUEEN + BLACK];
+        long bishops = pieces[BISHOP] | pieces[BISHOP + BLACK]
+                | pieces[QUEEN] | pieces[QUEEN + BLACK];
+        return (Bitboards.pawnAttacks(sq, true) & pieces[PAWN + BLACK])
+                | (Bitboards.pawnAttacks(sq, false) & pieces[PAWN])
+                | (Bitboards.knightAttacks(sq) & (pieces[KNIGHT] | pieces[KNIGHT + BLACK]))
+                | (Bitboards.kingAttacks(sq) & (pieces[KING] | pieces[KING + BLACK]))
+                | (Bitboards.rookAttacks(sq, occupied) & rooks)
+                | (Bitboards.bishopAttacks(sq, occupied) & bishops);
+    }
+
+    /**
+     * Static exchange evaluation: finds how much material a capture wins or loses if both sides
+     * keep recapturing on the square with their least valuable piece and each side can stop
+     * whenever recapturing would lose more. Sliding pieces behind other attackers (x-rays) join
+     * in once the pieces in front of them have captured. No moves are made, and pins and checks
+     * are ignored.
+     * @param move a legal capture of the side to move
+     * @return the material the side to move wins, negative if the capture loses material
+     */
+    public int see(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int[] gain = exchangeGains;
+        long occupied = occupied() ^ 1L << from;
+        int attackerValue = VALUES[type(mailbox[from])];
+        if (Move.flag(move) == Move.EN_PASSANT) {
+            gain[0] = VALUES[PAWN];
+            occupied ^= 1L << (whiteToMove ? to - 8 : to + 8);
+        } else {
+            gain[0] = mailbox[to] == EMPTY ? 0 : VALUES[type(mailbox[to])];
+        }
+        if (Move.promotion(move) != 0) {
+            attackerValue = VALUES[Move.promotion(move)];
+            gain[0] += attackerValue - VALUES[PAWN];
+        }
+        long rooks = pieces[ROOK] | pieces[ROOK + BLACK] | pieces[QUEEN] | pieces[QUEEN + BLACK];
+        long bishops = pieces[BISHOP] | pieces[BISHOP + BLACK]
+                | pieces[QUEEN] | pieces[QUEEN + BLACK];
+        long attackers = attackersTo(to, occupied) & occupied;
+        boolean white = whiteToMove;
+        int d = 0;
+        while (true) {
+            d++;
+            // the score if the other side recaptures the piece that just captured
+            gain[d] = attackerValue - gain[d - 1];
+            if (Math.max(-gain[d - 1], gain[d]) < 0) {
+                break; // neither side can gain by going on
+            }
+            white = !white;
+            long own = attackers & occupancy(white);
+            if (own == 0) {
+                break;
+            }
+            int type = PAWN;
+            long attacker = own & pieces[code(PAWN, white)];
+            // the least valuable attacker recaptures: pawn, knight, bishop, rook, queen, king
+            for (int next = KNIGHT; attacker == 0; next--) {
+                type = next;
+                attacker = own & pieces[code(next, white)];
+            }
+            occupied ^= Long.lowestOneBit(attacker);
+            attackers &= occupied;
+            // a sliding piece behind the piece that captured can now reach the square
+            if (type == PAWN || type == BISHOP || type == QUEEN) {
+                attackers |= Bitboards.bishopAttacks(to, occupied) & bishops & occupied;
+            }
+            if (type == ROOK || type == QUEEN) {
+                attackers |= Bitboards.rookAttacks(to, occupied) & rooks & occupied;
+            }
+            attackerValue = VALUES[type];
+        }
+        while (--d > 0) {
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+        }
+        return gain[0];
+    }
+
+    /**
+     * @return the version of the position, which changes every time the position changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Computes the checking pieces, the check mask and the pinned pieces of the side to move,
+     * unless they were already computed at the current version. {@link #legalMoves(int)} calls
+     * this itself. The checking pieces are only found again here for positions that were set up
+     * piece by piece.
+     */
+    public void updateLegalMoveMasks() {
+        if (masksVersion == version) {
+            return;
+        }
+        masksVersion = version;
+        boolean white = whiteToMove;
+        int king = kingSquare(white);
+        long own = occupancy(white);
+        long enemy = occupancy(!white);
+        long occupied = own | enemy;
+
+        checkers = attackersTo(king, occupied) & enemy;
+        checkMask = checkers == 0 ? -1L
+                : checkers | Bitboards.BETWEEN[king][Long.numberOfTrailingZeros(checkers)];
+
+        // an enemy slider on a line with the king pins the piece if it is the only blocker
+        pinned = 0;
+        long snipers = (Bitboards.rookAttacks(king, 0)
+                & (pieces(ROOK, !white) | pieces(QUEEN, !white)))
+                | (Bitboards.bishopAttacks(king, 0)
+                & (pieces(BISHOP, !white) | pieces(QUEEN, !white)));
+        while (snipers != 0) {
+            long blockers = Bitboards.BETWEEN[king][Long.numberOfTrailingZeros(snipers)] & occupied;
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & own;
+            }
+            snipers &= snipers - 1;
+        }
+    }
+
+    /**
+     * Gets the legal moves of the piece of the side to move on a square. Uses the masks from
+     * {@link #updateLegalMoveMasks()} so no moves have to be tried on the board.
+     * @param sq the square of the piece
+     * @return the bitboard of the squares the piece can legally move to
+     */
+    public long legalMoves(int sq) {
+        updateLegalMoveMasks();
+        int piece = mailbox[sq];
+        boolean white = isWhite(piece);
+        long own = occupancy(white);
+        long occupied = occupied();
+        int type = type(piece);
+        if (type == KING) {
+            return legalKingMoves(sq, white, occupied);
+        }
+        if (Long.bitCount(checkers) > 1) {
+            return 0; // only the king can move out of a double check
+        }
+
+        long targets;
+        long enPassant = 0;
+        if (type == PAWN) {
+            int forward = white ? 8 : -8;
+            targets = Bitboards.pawnAttacks(sq, white) & occupancy(!white);
+            if (mailbox[sq + forward] == EMPTY) {
+                targets |= 1L << (sq + forward);
+                if (sq >> 3 == (white ? 1 : 6) && mailbox[sq + 2 * forward] == EMPTY) {
+                    targets |= 1L << (sq + 2 * forward);
+                }
+            }
+            if (enPassantSquare >= 0 && enPassantSquare >> 3 == (white ? 5 : 2)
+                    && (Bitboards.pawnAttacks(sq, white) & 1L << enPassantSquare) != 0
+                    && isLegalEnPassant(sq, white)) {
+                enPassant = 1L << enPassantSquare;
+            }
+        } else {
+            targets = attacks(sq) & ~own;
+        }
+        targets &= checkMask;
+        if ((pinned & 1L << sq) != 0) {
+            targets &= Bitboards.LINE[kingSquare(white)][sq];
+        }
+        return targets | enPassant;
+    }
+
+    /**
+     * Writes every legal move of the side to move into an array, with a move for each piece a
+     * pawn can promote to. Uses the masks from {@link #updateLegalMoveMasks()}.
+     * @param moves the array to write the moves into, which needs room for 256 moves after start
+     * @param start the index to write the first move at
+     * @return the index after the last move written
+     */
+    public int generateMoves(int[] moves, int start) {
+        int count = start;
+        long own = occupancy(whiteToMove);
+        while (own != 0) {
+            int from = Long.numberOfTrailingZeros(own);
+            long targets = legalMoves(from);
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                int move = createMove(from, to, QUEEN);
+                moves[count++] = move;
+                if (Move.flag(move) == Move.PROMOTION) {
+                    for (int type = ROOK; type <= KNIGHT; type++) {
+                        moves[count++] = Move.of(from, to, Move.PROMOTION, type);
+                    }
+                }
+                targets &= targets - 1;
+            }
+            own &= own - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if the side to move has any legal move, stopping at the first piece that has one.
+     * Uses the masks from {@link #updateLegalMoveMasks()}.
+     * @return true if there is a legal move
+     */
+    public boolean hasLegalMove() {
+        long own = occupancy(whiteToMove);
+        // the king is tried first since it is the only piece that can move in a double check
+        if (legalMoves(kingSquare(whiteToMove)) != 0) {
+            return true;
+        }
+        while (own != 0) {
+            if (legalMoves(Long.numberOfTrailingZeros(own)) != 0) {
+                return true;
+            }
+            own &= own - 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return if the king of the side to move is in check. Does not need
+     * {@link #updateLegalMoveMasks()} after moves.
+     */
+    public boolean inCheck() {
+        return checkers != 0;
+    }
+
+    /**
+     * @return the bitboard of the pieces checking the king of the side to move
+     */
+    public long getCheckers() {
+        return checkers;
+    }
+
+    /**
+     * Checks if a square is attacked by a side, looking up the pieces that attack the square
+     * instead of generating moves
+     * @param sq the square
+     * @param byWhite the color of the attacking side
+     * @return true if any piece of the attacking side attacks the square
+     */
+    public boolean isSquareAttacked(int sq, boolean byWhite) {
+        return isAttacked(sq, byWhite, occupied());
+    }
+
+    /**
+     * Counts the squares the pieces of one color attack that are not occupied by their own
+     * pieces. Does not need the side to be the side to move, unlike the legal moves.
+     * @param white the color to count the mobility of
+     * @return the number of attacked squares, counted once per attacking piece
+     */
+    public int mobility(boolean white) {
+        long own = occupancy(white);
+        int ret = 0;
+        long pieces = own;
+        while (pieces != 0) {
+            ret += Long.bitCount(attacks(Long.numberOfTrailingZeros(pieces)) & ~own);
+            pieces &= pieces - 1;
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the legal moves of a king, including castling
+     * @param sq the square of the king
+     * @param white the color of the king
+     * @param occupied the occupied squares
+     * @return the bitboard of the squares the king can legally move to
+     */
+    private long legalKingMoves(int sq, boolean white, long occupied) {
+        long ret = 0;
+        long occupiedWithoutKing = occupied & ~(1L << sq);
+        long targets = Bitboards.kingAttacks(sq) & ~occupancy(white);
+        while (targets != 0) {
+            int target = Long.numberOfTrailingZeros(targets);
+            if (!isAttacked(target, !white, occupiedWithoutKing)) {
+                ret |= 1L << target;
+            }
+            targets &= targets - 1;
+        }
+        if (checkers != 0) {
+            return ret;
+        }
+        // can castle if the squares between the king and rook are empty and the king does not
+        // pass through or land on an attacked square
+        if ((castlingRights & (white ? WHITE_KINGSIDE : BLACK_KINGSIDE)) != 0
+                && (occupied & 3L << (sq + 1)) == 0
+                && !isSquareAttacked(sq + 1, !white) && !isSquareAttacked(sq + 2, !white)) {
+            ret |= 1L << (sq + 2);
+        }
+        if ((castlingRights & (white ? WHITE_QUEENSIDE : BLACK_QUEENSIDE)) != 0
+                && (occupied & 7L << (sq - 3)) == 0
+                && !isSquareAttacked(sq - 1, !white) && !isSquareAttacked(sq - 2, !white)) {
+            ret |= 1L << (sq - 2);
+        }
+        return ret;
+    }
+
+    /**
+     * Checks if capturing en Passant leaves the king safe. Both pawns leave their squares, so
+     * the usual pin and check masks are not enough.
+     * @param sq the square of the capturing pawn
+     * @param white the color of the capturing pawn
+     * @return true if the en Passant capture is legal
+     */
+    private boolean isLegalEnPassant(int sq, boolean white) {
+        int captured = enPassantSquare + (white ? -8 : 8);
+        long occupied = occupied() ^ 1L << sq ^ 1L << captured | 1L << enPassantSquare;
+        long attackers = attackersTo(kingSquare(white), occupied) & occupancy(!white);
+        return (attackers & ~(1L << captured)) == 0;
+    }
+
+    /**
+     * Checks if a square is attacked by a side
+     * @param sq the square
+     * @param byWhite the color of the attacking side
+     * @param occupied the occupied squares to use for sliding pieces
+     * @return true if any piece of the attacking side attacks the square
+     */
+    private boolean isAttacked(int sq, boolean byWhite, long occupied) {
+        return (attackersTo(sq, occupied) & occupancy(byWhite)) != 0;
+    }
+
+    /**
+     * Gets the total value of the pieces of one color, which is kept up to date as pieces are set
+     * @param white the color to get the material of
+     * @return the total value of the pieces
+     */
+    public int material(boolean white) {
+        return material[white ? 0 : 1];
+    }
+
+    /**
+     * @param white the color to check
+     * @return if the color has a piece other than its king and pawns
+     */
+    public boolean hasNonPawnMaterial(boolean white) {
+        return (occupancy(white) & ~pieces(PAWN, white) & ~pieces(KING, white)) != 0;
+    }
+
+    /**
+     * Evaluates the position from the terms kept up to date as pieces are set: the material
+     * difference plus the piece-square table difference, blended from the middlegame tables to
+     * the endgame tables as pieces come off the board. Takes constant time.
+     * @param white the color to evaluate the position for
+     * @return the score, positive if the position is better for the color
+     */
+    public int evaluate(boolean white) {
+        int phase = Math.min(this.phase, PieceSquareTables.MAX_PHASE);
+        int positional = ((middlegame[0] - middlegame[1]) * phase
+                + (endgame[0] - endgame[1]) * (PieceSquareTables.MAX_PHASE - phase))
+                / PieceSquareTables.MAX_PHASE;
+        int score = material[0] - material[1] + positional;
+        return white ? score : -score;
+    }
+}
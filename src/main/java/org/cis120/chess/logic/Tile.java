@@ -79,4 +79,12 @@ public class Tile {
         return validMove;
     }
 
+    /**
+     * @return the name of the tile in algebraic notation, for example "e4"
+     */
+    @Override
+    public String toString() {
+        return "" + (char) ('a' + y) + (char) ('8' - x);
+    }
+
 }
@@ -0,0 +1,144 @@
+package org.cis120.chess.perft;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts the leaf nodes of the move tree to a fixed depth (perft) by playing every legal move
+ * with {@link Board#makeMove(int)} and {@link Board#unmakeMove()}, the same path the AI searches
+ * with. Comparing the counts against the known counts of the {@link PerftPosition} reference
+ * positions checks the move generation, and the time it takes measures its speed.
+ *
+ * Run with {@code mvn exec:java -Dexec.mainClass=org.cis120.chess.perft.Perft} and the
+ * arguments {@code [depth]} to check every reference position up to a depth, or
+ * {@code divide <depth> <fen>} to split the count of a position by root move.
+ */
+public final class Perft {
+
+    /**
+     * The depth the reference positions are checked to if no depth is given
+     */
+    private static final int DEFAULT_DEPTH = 3;
+
+    /**
+     * The most moves a position can have
+     */
+    private static final int MAX_MOVES = 256;
+
+    private Perft() {
+    }
+
+    /**
+     * Counts the leaf nodes of the move tree of the board's position
+     * @param board the board, which is left in the same position
+     * @param depth the number of moves to look ahead
+     * @return the number of leaf nodes at the depth
+     */
+    public static long perft(Board board, int depth) {
+        return perft(board, depth, new int[Math.max(depth, 1)][MAX_MOVES]);
+    }
+
+    /**
+     * Counts the leaf nodes of the move tree using a move array per remaining depth
+     */
+    private static long perft(Board board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth - 1];
+        int count = board.generateMoves(moves, 0);
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            nodes += perft(board, depth - 1, buffers);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the leaf nodes of the move tree separately for each move of the board's position
+     * @param board the board, which is left in the same position
+     * @param depth the number of moves to look ahead, at least 1
+     * @return the number of leaf nodes after each root move, keyed by the move in coordinate
+     * notation (for example "e2e4" or "e7e8q")
+     */
+    public static Map<String, Long> divide(Board board, int depth) {
+        Map<String, Long> ret = new LinkedHashMap<>();
+        int[][] buffers = new int[depth][MAX_MOVES];
+        int[] moves = buffers[depth - 1];
+        int count = board.generateMoves(moves, 0);
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            ret.put(Move.toString(moves[i]), perft(board, depth - 1, buffers));
+            board.unmakeMove();
+        }
+        return ret;
+    }
+
+    /**
+     * Runs the reference positions or divides a position and prints the results
+     * @param args {@code [depth]} or {@code divide <depth> <fen>}
+     */
+    public static void main(String[] args) {
+        if (args.length >= 3 && args[0].equals("divide")) {
+            int depth = Integer.parseInt(args[1]);
+            StringBuilder fen = new StringBuilder();
+            for (int i = 2; i < args.length; i++) {
+                fen.append(args[i]).append(' ');
+            }
+            Board board = new Board(fen.toString());
+            long start = System.nanoTime();
+            long total = 0;
+            for (Map.Entry<String, Long> entry : divide(board, depth).entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
+                total += entry.getValue();
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println();
+            System.out.println("Nodes: " + total);
+            System.out.println("Time (ms): " + nanos / 1000000);
+            System.out.println("Nodes/sec: " + nodesPerSecond(total, nanos));
+            return;
+        }
+
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+        boolean passed = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        System.out.printf("%-12s %5s %12s %12s %6s %10s %12s%n",
+                "Position", "Depth", "Nodes", "Expected", "Result", "Time (ms)", "Nodes/sec");
+        for (PerftPosition position : PerftPosition.values()) {
+            Board board = new Board(position.getFen());
+            for (int depth = 1; depth <= Math.min(maxDepth, position.getMaxDepth()); depth++) {
+                long start = System.nanoTime();
+                long nodes = perft(board, depth);
+                long nanos = System.nanoTime() - start;
+                boolean ok = nodes == position.getCount(depth);
+                passed &= ok;
+                totalNodes += nodes;
+                totalNanos += nanos;
+                System.out.printf("%-12s %5d %12d %12d %6s %10d %12d%n",
+                        position.name(), depth, nodes, position.getCount(depth),
+                        ok ? "ok" : "FAIL", nanos / 1000000, nodesPerSecond(nodes, nanos));
+            }
+        }
+        System.out.println();
+        System.out.println("Total nodes: " + totalNodes + ", nodes/sec: "
+                + nodesPerSecond(totalNodes, totalNanos));
+        if (!passed) {
+            System.out.println("Perft FAILED");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the number of nodes per second, given the number of nodes and nanoseconds taken
+     */
+    private static long nodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : nodes * 1000000000L / nanos;
+    }
+}
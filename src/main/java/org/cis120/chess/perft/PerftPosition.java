@@ -0,0 +1,59 @@
+package org.cis120.chess.perft;
+
+/**
+ * The standard perft reference positions and their known leaf node counts. Together they cover
+ * castling, en Passant (including en Passant that exposes the king along a rank), promotions,
+ * checks and pins.
+ */
+public enum PerftPosition {
+    START("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            20, 400, 8902, 197281, 4865609, 119060324),
+    KIWIPETE("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            48, 2039, 97862, 4085603, 193690690),
+    POSITION_3("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            14, 191, 2812, 43238, 674624, 11030083),
+    POSITION_4("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            6, 264, 9467, 422333, 15833292),
+    POSITION_5("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            44, 1486, 62379, 2103487, 89941194),
+    POSITION_6("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            46, 2079, 89890, 3894594, 164075551);
+
+    /**
+     * The position in Forsyth-Edwards Notation
+     */
+    private final String fen;
+
+    /**
+     * The known number of leaf nodes, where index i is the count at depth i + 1
+     */
+    private final long[] counts;
+
+    PerftPosition(String fen, long... counts) {
+        this.fen = fen;
+        this.counts = counts;
+    }
+
+    /**
+     * @return the position in Forsyth-Edwards Notation
+     */
+    public String getFen() {
+        return fen;
+    }
+
+    /**
+     * @return the deepest depth with a known count
+     */
+    public int getMaxDepth() {
+        return counts.length;
+    }
+
+    /**
+     * Gets the known number of leaf nodes at a depth
+     * @param depth the depth, between 1 and {@link #getMaxDepth()}
+     * @return the known number of leaf nodes
+     */
+    public long getCount(int depth) {
+        return counts[depth - 1];
+    }
+}
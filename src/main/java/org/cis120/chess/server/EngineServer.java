@@ -0,0 +1,268 @@
+package org.cis120.chess.server;
+
+import org.cis120.chess.ai.ChessAI;
+import org.cis120.chess.ai.TranspositionTable;
+import org.cis120.chess.logic.Board;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many games at once without the Swing interface, for clients on the same machine. Each
+ * connection is a {@link Session} that sends commands one line at a time:
+ *
+ * <pre>
+ * new [fen]            starts a game from a position, or the starting position
+ *                      replies "ok &lt;game&gt;"
+ * move &lt;game&gt; &lt;move&gt;    plays a move in coordinate notation, for example e2e4 or e7e8q
+ *                      replies "ok"
+ * go &lt;game&gt; [millis]    searches for the move of the player to move and plays it
+ *                      replies "bestmove &lt;game&gt; &lt;move&gt;" when the search ends, or
+ *                      "bestmove &lt;game&gt; none" if the game is over, also when
+ *                      the position was repeated three times
+ * fen &lt;game&gt;           replies "fen &lt;game&gt; &lt;fen&gt;" with the current position
+ * close &lt;game&gt;         ends a game, replies "ok"
+ * quit                 replies "bye" and disconnects
+ * </pre>
+ *
+ * A command that fails replies "error" and the reason. Any session can play any game, but
+ * a game cannot be changed while it is being searched.
+ *
+ * Each connection is handled on its own virtual thread when the Java runtime has them, and on
+ * a thread of a cached pool otherwise, so idle connections cost little. The searches run on a
+ * fixed pool with one thread per processor, which each session gets a fair share of (see
+ * {@link Session}). An idle game only keeps its position and the positions that can repeat
+ * (see {@link Game}), and the ais are created for each search and share two transposition
+ * tables, one for each color they play, which age every few seconds.
+ *
+ * Run with {@code mvn exec:java -Dexec.mainClass=org.cis120.chess.server.EngineServer} and the
+ * arguments {@code [port] [search threads]}.
+ */
+public final class EngineServer implements AutoCloseable {
+
+    /**
+     * The port the server listens on if no port is given
+     */
+    public static final int DEFAULT_PORT = 7120;
+
+    /**
+     * The time a search takes if the command gives none, and the longest it can take, in
+     * milliseconds
+     */
+    private static final long DEFAULT_SEARCH_TIME = 1000;
+    private static final long MAX_SEARCH_TIME = 60000;
+
+    /**
+     * The time between new generations of the shared transposition tables, in milliseconds.
+     * Entries older than a generation are replaced first.
+     */
+    private static final long TABLE_AGING_TIME = 10000;
+
+    /**
+     * The socket the server accepts connections on
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * The threads the connections are handled on
+     */
+    private final ExecutorService connections;
+
+    /**
+     * The threads the searches run on
+     */
+    private final ExecutorService searchPool;
+
+    /**
+     * The transposition tables shared by the ais playing white and the ais playing black
+     */
+    private final TranspositionTable whiteTable, blackTable;
+
+    /**
+     * The time the transposition tables last started a new generation, from System.nanoTime()
+     */
+    private final AtomicLong lastAging = new AtomicLong(System.nanoTime());
+
+    /**
+     * The open games by number, and the number of the next game
+     */
+    private final Map<Long, Game> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Constructor, starts listening on the loopback address
+     * @param port the port, or 0 for any free port
+     * @param searchThreads the number of searches that run at once
+     * @throws IOException if the port cannot be opened
+     */
+    public EngineServer(int port, int searchThreads) throws IOException {
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        connections = newConnectionExecutor();
+        AtomicInteger count = new AtomicInteger();
+        searchPool = Executors.newFixedThreadPool(searchThreads, r -> {
+            Thread thread = new Thread(r, "Chess search " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        whiteTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE);
+        blackTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread if the Java runtime has
+     * virtual threads (Java 21), looked up by reflection since the program is built for Java 8,
+     * or else on a cached pool of daemon threads
+     * @return the executor
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "Chess session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of open games
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * Accepts connections until the server is closed
+     * @throws IOException if accepting a connection fails for another reason
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            connections.execute(new Session(this, socket));
+        }
+    }
+
+    /**
+     * Stops accepting connections and stops the threads. Connections that are open stay open
+     * until their clients disconnect.
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdown();
+        searchPool.shutdownNow();
+    }
+
+    /**
+     * Starts a game
+     * @param fen the starting position
+     * @return the game
+     * @throws IllegalArgumentException if the FEN is malformed
+     */
+    Game newGame(String fen) {
+        Game game = new Game(nextId.getAndIncrement(), fen);
+        games.put(game.getId(), game);
+        return game;
+    }
+
+    /**
+     * @return the open game with a number
+     * @throws IllegalArgumentException if there is no such game
+     */
+    Game getGame(long id) {
+        Game game = games.get(id);
+        if (game == null) {
+            throw new IllegalArgumentException("Unknown game: " + id);
+        }
+        return game;
+    }
+
+    /**
+     * Ends a game, if it is open
+     * @param id the number of the game
+     */
+    void closeGame(long id) {
+        games.remove(id);
+    }
+
+    /**
+     * @return the pool the searches run on
+     */
+    ExecutorService getSearchPool() {
+        return searchPool;
+    }
+
+    /**
+     * Searches for the move of the player to move, on the calling thread
+     * @param board the board, which is not changed
+     * @param millis the time to search for, or 0 for the default
+     * @return the best move as a packed {@link org.cis120.chess.logic.Move}, or Move.NONE if
+     * the game is over
+     */
+    int search(Board board, long millis) {
+        ageTables();
+        boolean white = board.getTurn();
+        ChessAI ai = new ChessAI(white, board, white ? whiteTable : blackTable);
+        ai.setTimeBudget(millis <= 0 ? DEFAULT_SEARCH_TIME : Math.min(millis, MAX_SEARCH_TIME));
+        return ai.searchAsync(Runnable::run).join();
+    }
+
+    /**
+     * Starts a new generation of both transposition tables if the last one is older than
+     * {@link #TABLE_AGING_TIME}. The searches of unrelated games share the tables, so the tables
+     * age with time instead of with every search.
+     */
+    private void ageTables() {
+        long last = lastAging.get();
+        long now = System.nanoTime();
+        if (now - last >= TABLE_AGING_TIME * 1000000 && lastAging.compareAndSet(last, now)) {
+            whiteTable.newSearch();
+            blackTable.newSearch();
+        }
+    }
+
+    /**
+     * Runs a server until the process is stopped
+     * @param args {@code [port] [search threads]}
+     * @throws IOException if the port cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        try (EngineServer server = new EngineServer(port, threads)) {
+            System.out.println("Listening on port " + server.getPort() + " with " + threads
+                    + " search threads");
+            server.serve();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.cis120.chess.server;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+
+import java.util.Arrays;
+
+/**
+ * A game hosted by the {@link EngineServer}. Only the current position is kept, in
+ * Forsyth-Edwards Notation, along with the hash keys of the positions since the last capture or
+ * pawn move, which are all the positions that can repeat. A game that is not being played takes
+ * up a few hundred bytes. A {@link Board} is created from the position for every move and
+ * search.
+ */
+final class Game {
+
+    /**
+     * The number of the game
+     */
+    private final long id;
+
+    /**
+     * The current position in Forsyth-Edwards Notation
+     */
+    private String fen;
+
+    /**
+     * The hash keys of the positions since the last capture or pawn move, the current one last,
+     * and the number of them
+     */
+    private long[] keys = new long[8];
+    private int keyCount;
+
+    /**
+     * If the engine is searching for a move in the game, during which it cannot be changed
+     */
+    private boolean searching;
+
+    /**
+     * Constructor, starts a game
+     * @param id the number of the game
+     * @param fen the starting position
+     * @throws IllegalArgumentException if the FEN is malformed
+     */
+    Game(long id, String fen) {
+        this.id = id;
+        Board board = new Board(fen);
+        this.fen = board.toFen();
+        addKey(board);
+    }
+
+    /**
+     * @return the number of the game
+     */
+    long getId() {
+        return id;
+    }
+
+    /**
+     * @return the current position in Forsyth-Edwards Notation
+     */
+    synchronized String getFen() {
+        return fen;
+    }
+
+    /**
+     * @return if the current position has been reached three times with the same player to
+     * move, which makes the game a draw
+     */
+    synchronized boolean isRepetition() {
+        long key = keys[keyCount - 1];
+        int count = 1;
+        for (int i = keyCount - 3; i >= 0 && count < 3; i -= 2) {
+            if (keys[i] == key) {
+                count++;
+            }
+        }
+        return count >= 3;
+    }
+
+    /**
+     * Remembers the position of a board after a move, forgetting the positions before the move
+     * if it was a capture or pawn move, since they cannot be reached again
+     * @param board the board
+     */
+    private void addKey(Board board) {
+        if (board.getHalfmoveClock() == 0) {
+            keyCount = 0;
+        } else if (keyCount == keys.length) {
+            keys = Arrays.copyOf(keys, keyCount * 2);
+        }
+        keys[keyCount++] = board.getKey();
+    }
+
+    /**
+     * Plays a move
+     * @param text the move in coordinate notation, for example "e2e4" or "e7e8q"
+     * @throws IllegalArgumentException if the move is not legal
+     * @throws IllegalStateException if the engine is searching in the game
+     */
+    synchronized void play(String text) {
+        if (searching) {
+            throw new IllegalStateException("Game " + id + " is searching");
+        }
+        Board board = new Board(fen);
+        board.makeMove(parseMove(board, text));
+        fen = board.toFen();
+        addKey(board);
+    }
+
+    /**
+     * Starts a search, after which the game cannot be changed until it ends
+     * @return a board in the current position
+     * @throws IllegalStateException if the engine is already searching in the game
+     */
+    synchronized Board startSearch() {
+        if (searching) {
+            throw new IllegalStateException("Game " + id + " is searching");
+        }
+        searching = true;
+        return new Board(fen);
+    }
+
+    /**
+     * Ends a search, playing the move that was found
+     * @param board the board the search started from
+     * @param move the packed {@link Move}, or Move.NONE to play nothing
+     */
+    synchronized void endSearch(Board board, int move) {
+        if (move != Move.NONE) {
+            board.makeMove(move);
+            fen = board.toFen();
+            addKey(board);
+        }
+        searching = false;
+    }
+
+    /**
+     * Finds the legal move of a board written in coordinate notation
+     * @param board the board
+     * @param text the move
+     * @return the packed {@link Move}
+     * @throws IllegalArgumentException if the move is not legal
+     */
+    static int parseMove(Board board, String text) {
+        int[] moves = new int[256];
+        int count = board.generateMoves(moves, 0);
+        for (int i = 0; i < count; i++) {
+            if (Move.toString(moves[i]).equals(text)) {
+                return moves[i];
+            }
+        }
+        throw new IllegalArgumentException("Illegal move: " + text);
+    }
+}
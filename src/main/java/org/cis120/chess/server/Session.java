@@ -0,0 +1,242 @@
+package org.cis120.chess.server;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Move;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A connection to the {@link EngineServer}, which reads commands one line at a time and writes
+ * the replies, see {@link EngineServer} for the protocol. The games a session starts are closed
+ * when it disconnects.
+ *
+ * The searches a session asks for wait in its own queue, and only one of them at a time is
+ * handed to the server's search pool. When it finishes the next one goes to the back of the
+ * pool's queue, so every session gets its turn no matter how many searches it asks for.
+ */
+final class Session implements Runnable {
+
+    /**
+     * The server the session is connected to
+     */
+    private final EngineServer server;
+
+    /**
+     * The connection
+     */
+    private final Socket socket;
+
+    /**
+     * The stream the replies are written to, set once the session runs. Replies of searches are
+     * written from the search threads, so every write holds the session's lock.
+     */
+    private PrintWriter out;
+
+    /**
+     * The games the session started that are still open. Only used by the session's thread.
+     */
+    private final Set<Long> games = new HashSet<>();
+
+    /**
+     * The searches waiting for the one in the search pool to finish
+     */
+    private final ArrayDeque<Runnable> searches = new ArrayDeque<>();
+
+    /**
+     * If a search of the session is in the search pool, guarded by searches
+     */
+    private boolean scheduled;
+
+    /**
+     * Constructor, sets the fields
+     * @param server the server
+     * @param socket the connection
+     */
+    Session(EngineServer server, Socket socket) {
+        this.server = server;
+        this.socket = socket;
+    }
+
+    /**
+     * Handles the commands of the connection until it is closed or sends quit
+     */
+    @Override
+    public void run() {
+        try (Socket socket = this.socket) {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null && handle(line.trim())) {
+                continue;
+            }
+        } catch (IOException e) {
+            // the client disconnected
+        } finally {
+            synchronized (searches) {
+                searches.clear();
+            }
+            for (long id : games) {
+                server.closeGame(id);
+            }
+        }
+    }
+
+    /**
+     * Handles a command
+     * @param line the command
+     * @return false if the session should end
+     */
+    private boolean handle(String line) {
+        String[] args = line.split("\\s+");
+        try {
+            switch (args[0]) {
+                case "":
+                    break;
+                case "new":
+                    String fen = line.length() > 3 ? line.substring(3).trim() : Board.START_FEN;
+                    Game game = server.newGame(fen.isEmpty() ? Board.START_FEN : fen);
+                    games.add(game.getId());
+                    send("ok " + game.getId());
+                    break;
+                case "move":
+                    checkArgs(args, 3);
+                    server.getGame(parseId(args[1])).play(args[2]);
+                    send("ok");
+                    break;
+                case "go":
+                    checkArgs(args, 2);
+                    go(server.getGame(parseId(args[1])),
+                            args.length > 2 ? Long.parseLong(args[2]) : 0);
+                    break;
+                case "fen":
+                    checkArgs(args, 2);
+                    Game shown = server.getGame(parseId(args[1]));
+                    send("fen " + shown.getId() + " " + shown.getFen());
+                    break;
+                case "close":
+                    checkArgs(args, 2);
+                    long id = parseId(args[1]);
+                    server.closeGame(id);
+                    games.remove(id);
+                    send("ok");
+                    break;
+                case "quit":
+                    send("bye");
+                    return false;
+                default:
+                    send("error Unknown command: " + args[0]);
+                    break;
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            send("error " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Queues a search for the move of the player to move in a game, which is played when it is
+     * found. The reply is sent when the search finishes, or right away if the game is drawn by
+     * repetition.
+     * @param game the game
+     * @param millis the time to search for, or 0 for the server's default
+     * @throws IllegalStateException if the game is already being searched
+     */
+    private void go(Game game, long millis) {
+        if (game.isRepetition()) {
+            send("bestmove " + game.getId() + " none");
+            return;
+        }
+        Board board = game.startSearch();
+        queue(() -> {
+            int move = Move.NONE;
+            try {
+                move = server.search(board, millis);
+            } catch (RuntimeException e) {
+                send("error Search of game " + game.getId() + " failed: " + e);
+                return;
+            } finally {
+                game.endSearch(board, move);
+            }
+            send("bestmove " + game.getId() + " "
+                    + (move == Move.NONE ? "none" : Move.toString(move)));
+        });
+    }
+
+    /**
+     * Adds a search to the session's queue, handing it to the search pool right away if no
+     * other search of the session is there
+     */
+    private void queue(Runnable search) {
+        synchronized (searches) {
+            searches.add(search);
+            if (!scheduled) {
+                scheduled = true;
+                server.getSearchPool().execute(this::runNext);
+            }
+        }
+    }
+
+    /**
+     * Runs the next search of the queue in the search pool, then hands the one after it to the
+     * pool
+     */
+    private void runNext() {
+        Runnable search;
+        synchronized (searches) {
+            search = searches.poll();
+        }
+        try {
+            if (search != null) {
+                search.run();
+            }
+        } finally {
+            synchronized (searches) {
+                if (searches.isEmpty()) {
+                    scheduled = false;
+                } else {
+                    server.getSearchPool().execute(this::runNext);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a reply
+     */
+    private synchronized void send(String reply) {
+        out.println(reply);
+        out.flush();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a command has fewer than count words
+     */
+    private static void checkArgs(String[] args, int count) {
+        if (args.length < count) {
+            throw new IllegalArgumentException("Missing arguments for " + args[0]);
+        }
+    }
+
+    /**
+     * @return the number of a game
+     * @throws IllegalArgumentException if the text is not a number
+     */
+    private static long parseId(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid game: " + text);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.cis120.chess.tablebase;
+
+import org.cis120.chess.logic.Position;
+
+import java.util.Arrays;
+
+/**
+ * The pieces of one endgame table and the index of each of its positions. A table is named by
+ * the pieces of each side, for example KQvKR, with the stronger side first. In the table the
+ * stronger side is white, so a position where black has the stronger pieces is looked up with
+ * the colors swapped and the board flipped.
+ *
+ * The pieces are kept in slots: the white king, the black king, then the other white pieces
+ * and the other black pieces, each in the order of their {@link Position} types. Without pawns
+ * the board can be turned and mirrored without changing the position, so every position is
+ * turned so the white king is in the triangle a1-d1-d4, which leaves 10 squares for it. The
+ * index of a position is the triangle square of the white king followed by the square of every
+ * other piece, 10 * 64^(pieces - 1) indexes in all. When more than one way of turning the board
+ * puts the white king in the triangle, or two identical pieces can swap squares, the smallest
+ * index is used, so every position has exactly one index.
+ */
+final class Material {
+
+    /**
+     * The letters of the piece types, indexed by {@link Position} type
+     */
+    static final String LETTERS = "KQRBNP";
+
+    /**
+     * The squares of the triangle, and the triangle index of each square (-1 if it is not in
+     * the triangle)
+     */
+    private static final int[] TRIANGLE_SQUARES = new int[10];
+    private static final int[] TRIANGLE_INDEX = new int[64];
+
+    /**
+     * The square each of the 8 symmetries of the board moves each square to, indexed by
+     * [symmetry][square]. Bit 2 of the symmetry swaps ranks and files, bit 0 mirrors the files
+     * and bit 1 mirrors the ranks.
+     */
+    private static final int[][] SYMMETRIES = new int[8][64];
+
+    /**
+     * The symmetries that move a white king on each square into the triangle
+     */
+    private static final int[][] KING_SYMMETRIES = new int[64][];
+
+    static {
+        int count = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int rank = sq >> 3;
+            int file = sq & 7;
+            if (file <= 3 && rank <= file) {
+                TRIANGLE_SQUARES[count] = sq;
+                TRIANGLE_INDEX[sq] = count++;
+            } else {
+                TRIANGLE_INDEX[sq] = -1;
+            }
+            for (int s = 0; s < 8; s++) {
+                int r = (s & 4) != 0 ? file : rank;
+                int f = (s & 4) != 0 ? rank : file;
+                SYMMETRIES[s][sq] = ((s & 2) != 0 ? 7 - r : r) * 8 + ((s & 1) != 0 ? 7 - f : f);
+            }
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int[] symmetries = new int[8];
+            int n = 0;
+            for (int s = 0; s < 8; s++) {
+                if (TRIANGLE_INDEX[SYMMETRIES[s][sq]] >= 0) {
+                    symmetries[n++] = s;
+                }
+            }
+            KING_SYMMETRIES[sq] = Arrays.copyOf(symmetries, n);
+        }
+    }
+
+    /**
+     * The name of the table, for example KQvKR
+     */
+    final String name;
+
+    /**
+     * The number of pieces, and the type and color of the piece in each slot
+     */
+    final int count;
+    final int[] types;
+    final boolean[] whites;
+
+    /**
+     * The number of indexes for one side to move
+     */
+    final int size;
+
+    /**
+     * If the last two slots hold identical pieces, which can swap squares
+     */
+    private final boolean identicalPair;
+
+    /**
+     * Constructor, sets up the slots of a table
+     * @param name the name of the table, with the stronger side first
+     * @throws IllegalArgumentException if the name is not a pawnless table of 2 to 4 pieces
+     */
+    Material(String name) {
+        String[] sides = name.split("v");
+        if (sides.length != 2 || !name.matches("K[QRBN]*vK[QRBN]*")
+                || sides[0].length() + sides[1].length() > Tablebase.MAX_PIECES
+                || !sides[0].equals(side(sides[0])) || !sides[1].equals(side(sides[1]))
+                || isStronger(sides[1], sides[0])) {
+            throw new IllegalArgumentException("Invalid table: " + name);
+        }
+        this.name = name;
+        count = sides[0].length() + sides[1].length();
+        types = new int[count];
+        whites = new boolean[count];
+        types[1] = Position.KING;
+        whites[0] = true;
+        int slot = 2;
+        for (int i = 1; i < sides[0].length(); i++, slot++) {
+            types[slot] = LETTERS.indexOf(sides[0].charAt(i));
+            whites[slot] = true;
+        }
+        for (int i = 1; i < sides[1].length(); i++, slot++) {
+            types[slot] = LETTERS.indexOf(sides[1].charAt(i));
+        }
+        identicalPair = count == 4 && types[2] == types[3] && whites[2] == whites[3];
+        size = 10 << (6 * (count - 1));
+    }
+
+    /**
+     * Sorts the letters of a side into the order of the slots
+     * @param pieces the letters of the side's pieces, starting with the king
+     * @return the side in slot order
+     */
+    static String side(String pieces) {
+        StringBuilder ret = new StringBuilder("K");
+        for (char letter : "QRBN".toCharArray()) {
+            for (int i = 1; i < pieces.length(); i++) {
+                if (pieces.charAt(i) == letter) {
+                    ret.append(letter);
+                }
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Checks if one side is the stronger side of a table: it has more pieces, or as many
+     * pieces and the first piece that differs is stronger
+     * @param a a side in slot order
+     * @param b the other side in slot order
+     * @return if a has to be listed before b
+     */
+    static boolean isStronger(String a, String b) {
+        if (a.length() != b.length()) {
+            return a.length() > b.length();
+        }
+        for (int i = 1; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return LETTERS.indexOf(a.charAt(i)) < LETTERS.indexOf(b.charAt(i));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the index of a position
+     * @param squares the square of the piece in each slot
+     * @return the index, from 0 to size - 1
+     */
+    int index(int[] squares) {
+        int best = Integer.MAX_VALUE;
+        for (int s : KING_SYMMETRIES[squares[0]]) {
+            int[] symmetry = SYMMETRIES[s];
+            int index = TRIANGLE_INDEX[symmetry[squares[0]]];
+            for (int slot = 1; slot < count; slot++) {
+                int sq = symmetry[squares[slot]];
+                if (identicalPair && slot == 2) {
+                    sq = Math.min(sq, symmetry[squares[3]]);
+                } else if (identicalPair && slot == 3) {
+                    sq = Math.max(symmetry[squares[2]], symmetry[squares[3]]);
+                }
+                index = index << 6 | sq;
+            }
+            best = Math.min(best, index);
+        }
+        return best;
+    }
+
+    /**
+     * Gets the position of an index
+     * @param index the index
+     * @param squares the array to write the square of the piece in each slot into
+     */
+    void decode(int index, int[] squares) {
+        for (int slot = count - 1; slot > 0; slot--) {
+            squares[slot] = index & 63;
+            index >>>= 6;
+        }
+        squares[0] = TRIANGLE_SQUARES[index];
+    }
+}
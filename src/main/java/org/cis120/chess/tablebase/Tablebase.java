@@ -0,0 +1,311 @@
+package org.cis120.chess.tablebase;
+
+import org.cis120.chess.logic.Board;
+import org.cis120.chess.logic.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Endgame tablebases: tables of the distance to mate of every position of the endings with at
+ * most {@link #MAX_PIECES} pieces and no pawns, built by {@link TablebaseGenerator}. Each table
+ * is a file in a directory, named after its pieces (see {@link Material}), with one byte per
+ * position for white to move and then one for black to move. A byte is 0 for a draw and
+ * otherwise one more than the number of moves (plies) to mate with perfect play, which is odd
+ * if the player to move wins and even if they lose.
+ *
+ * A table file is memory-mapped the first time a position of the table is probed, so only the
+ * parts of the table that are used are read from disk. A tablebase can be probed by several
+ * threads at once.
+ */
+public final class Tablebase {
+
+    /**
+     * The most pieces, including the kings, of the positions in the tables
+     */
+    public static final int MAX_PIECES = 4;
+
+    /**
+     * The score of a position that is won right away (mate), from the point of view of the
+     * player to move. A win in n plies scores WIN_SCORE - n, more than any material advantage
+     * and more for shorter wins, and a loss the negative of that.
+     */
+    public static final int WIN_SCORE = 20000;
+
+    /**
+     * The result of a probe of a position that is not in the tables
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * The extension of the table files
+     */
+    static final String EXTENSION = ".tb";
+
+    /**
+     * The number of material keys, see {@link #materialKey(int, int[], boolean[])}
+     */
+    private static final int MATERIAL_KEYS = 73;
+
+    /**
+     * The directory the table files are in
+     */
+    private final Path directory;
+
+    /**
+     * The table of each material key, loaded the first time it is probed
+     */
+    private final Table[] tables = new Table[MATERIAL_KEYS];
+
+    /**
+     * A table of the tablebase, seen from one side's pieces
+     */
+    private static final class Table {
+
+        /**
+         * The pieces of the table, or null if only the kings are left
+         */
+        private final Material material;
+
+        /**
+         * If the colors are swapped in the table, since the stronger pieces are black's
+         */
+        private final boolean flip;
+
+        /**
+         * The bytes of the table, or null if there is no table file
+         */
+        private final ByteBuffer data;
+
+        /**
+         * Constructor, sets the fields
+         */
+        private Table(Material material, boolean flip, ByteBuffer data) {
+            this.material = material;
+            this.flip = flip;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Scratch arrays for the pieces of a position being probed, so a probe does not allocate.
+     * Each thread that probes keeps its own.
+     */
+    public static final class Buffers {
+
+        /**
+         * The type, color and square of each piece of the position
+         */
+        final int[] types = new int[MAX_PIECES];
+        final boolean[] whites = new boolean[MAX_PIECES];
+        final int[] squares = new int[MAX_PIECES];
+
+        /**
+         * The square of each piece of a table, in the order of the table's pieces
+         */
+        final int[] slotSquares = new int[MAX_PIECES];
+    }
+
+    /**
+     * Constructor, sets the directory. Nothing is read until positions are probed.
+     * @param directory the directory of the table files
+     */
+    Tablebase(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the tablebase in a directory
+     * @param directory the directory of the table files
+     * @return the tablebase
+     * @throws IOException if the directory does not exist
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        return new Tablebase(directory);
+    }
+
+    /**
+     * Looks up the board's position in the tables, see {@link #probe(Board, Buffers)}
+     * @param board the board
+     * @return the score of the position, or UNKNOWN if the position is not in the tables
+     */
+    public int probe(Board board) {
+        return probe(board, new Buffers());
+    }
+
+    /**
+     * Looks up the board's position in the tables. Only positions with at most
+     * {@link #MAX_PIECES} pieces, no pawns and no castling rights are in the tables.
+     * @param board the board
+     * @param buffers the scratch arrays of the calling thread
+     * @return the score of the position from the point of view of the player to move (see
+     * {@link #WIN_SCORE}), 0 for a draw, or UNKNOWN if the position is not in the tables
+     */
+    public int probe(Board board, Buffers buffers) {
+        long occupied = board.getOccupied();
+        if (Long.bitCount(occupied) > MAX_PIECES || board.getCastlingRights() != 0) {
+            return UNKNOWN;
+        }
+        int[] types = buffers.types;
+        boolean[] whites = buffers.whites;
+        int[] squares = buffers.squares;
+        int count = 0;
+        while (occupied != 0) {
+            int sq = Long.numberOfTrailingZeros(occupied);
+            int piece = board.pieceAt(sq);
+            types[count] = Position.type(piece);
+            whites[count] = Position.isWhite(piece);
+            squares[count] = sq;
+            count++;
+            occupied &= occupied - 1;
+        }
+        int code = code(count, buffers, board.getTurn());
+        if (code < 0) {
+            return UNKNOWN;
+        }
+        if (code == 0) {
+            return 0;
+        }
+        int plies = code - 1;
+        return (plies & 1) != 0 ? WIN_SCORE - plies : -(WIN_SCORE - plies);
+    }
+
+    /**
+     * Looks up the byte of a position in the tables
+     * @param count the number of pieces
+     * @param buffers the type, color and square of each piece, and the scratch array used
+     * @param whiteToMove if it is white's turn
+     * @return the byte of the position, or -1 if the position is not in the tables
+     */
+    int code(int count, Buffers buffers, boolean whiteToMove) {
+        int[] types = buffers.types;
+        boolean[] whites = buffers.whites;
+        int[] squares = buffers.squares;
+        int key = materialKey(count, types, whites);
+        if (key < 0) {
+            return -1;
+        }
+        Table table = tables[key];
+        if (table == null) {
+            table = load(key, count, types, whites);
+        }
+        if (table.material == null) {
+            return 0; // two bare kings
+        }
+        if (table.data == null) {
+            return -1;
+        }
+        Material material = table.material;
+        int[] slotSquares = buffers.slotSquares;
+        int used = 0;
+        for (int slot = 0; slot < material.count; slot++) {
+            for (int i = 0; i < count; i++) {
+                if ((used & 1 << i) == 0 && types[i] == material.types[slot]
+                        && (whites[i] != table.flip) == material.whites[slot]) {
+                    slotSquares[slot] = table.flip ? squares[i] ^ 56 : squares[i];
+                    used |= 1 << i;
+                    break;
+                }
+            }
+        }
+        int index = material.index(slotSquares);
+        boolean white = whiteToMove != table.flip;
+        return table.data.get(white ? index : material.size + index) & 0xFF;
+    }
+
+    /**
+     * Gets a small number for the pieces other than the kings, which are the same for every
+     * position of a table seen from the same side. Each such piece is numbered from 0 to 7 by
+     * its type and color.
+     * @return the key, or -1 if there are too many pieces, a pawn or a missing king
+     */
+    private static int materialKey(int count, int[] types, boolean[] whites) {
+        if (count > MAX_PIECES) {
+            return -1;
+        }
+        int kings = 0;
+        int a = -1;
+        int b = -1;
+        for (int i = 0; i < count; i++) {
+            if (types[i] == Position.KING) {
+                kings++;
+                continue;
+            } else if (types[i] == Position.PAWN) {
+                return -1;
+            }
+            int piece = types[i] - Position.QUEEN + (whites[i] ? 0 : 4);
+            if (a < 0) {
+                a = piece;
+            } else {
+                b = piece;
+            }
+        }
+        if (kings != 2) {
+            return -1;
+        }
+        if (a < 0) {
+            return 0;
+        } else if (b < 0) {
+            return 1 + a;
+        }
+        return 9 + Math.min(a, b) * 8 + Math.max(a, b);
+    }
+
+    /**
+     * Finds the table of a material key and maps its file, if it has one
+     * @return the table
+     */
+    private synchronized Table load(int key, int count, int[] types, boolean[] whites) {
+        if (tables[key] != null) {
+            return tables[key];
+        }
+        StringBuilder white = new StringBuilder("K");
+        StringBuilder black = new StringBuilder("K");
+        for (int i = 0; i < count; i++) {
+            if (types[i] != Position.KING) {
+                (whites[i] ? white : black).append(Material.LETTERS.charAt(types[i]));
+            }
+        }
+        String whiteSide = Material.side(white.toString());
+        String blackSide = Material.side(black.toString());
+        Table table;
+        if (key == 0) {
+            table = new Table(null, false, null);
+        } else {
+            boolean flip = Material.isStronger(blackSide, whiteSide);
+            Material material = new Material(flip ? blackSide + "v" + whiteSide
+                    : whiteSide + "v" + blackSide);
+            table = new Table(material, flip, map(material));
+        }
+        tables[key] = table;
+        return table;
+    }
+
+    /**
+     * Maps the file of a table
+     * @return the bytes of the table, or null if the file is missing or has the wrong size
+     */
+    private ByteBuffer map(Material material) {
+        Path file = directory.resolve(material.name + EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != 2L * material.size) {
+                System.err.println("Tablebase file has the wrong size: " + file);
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            System.err.println("Could not open tablebase file " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
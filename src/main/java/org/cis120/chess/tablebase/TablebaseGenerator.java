@@ -0,0 +1,509 @@
+package org.cis120.chess.tablebase;
+
+import org.cis120.chess.logic.Bitboards;
+import org.cis120.chess.logic.Position;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the {@link Tablebase} tables by retrograde analysis. Every position of a table is first
+ * checked for mate and stalemate, and for captures, which lead into the smaller tables the
+ * table depends on. Then the results spread backwards one ply at a time: a position where the
+ * player to move is mated in n plies makes every position that can move into it a win in n + 1,
+ * and a position is lost in n + 1 once every move from it leads to a win for the opponent, the
+ * longest of them in n. Positions that are never reached this way are draws.
+ *
+ * For each position the generator counts the different positions its non-capturing moves lead
+ * to. Moving backwards from a won position takes one off the count of each position that leads
+ * to it, and a position is lost when its count reaches 0. The positions are counted by their
+ * index, so positions that are the same up to turning the board are only counted once.
+ *
+ * Run with {@code mvn exec:java -Dexec.mainClass=org.cis120.chess.tablebase.TablebaseGenerator}
+ * and the arguments {@code <directory> [tables...]}, for example {@code tablebases KQvK KRvK}.
+ * Without tables every pawnless table of 3 and 4 pieces is built. The tables a table depends on
+ * are built first if their files are missing.
+ */
+public final class TablebaseGenerator {
+
+    /**
+     * The tables that are built if none are given
+     */
+    private static final String[] DEFAULT_TABLES = {
+        "KQvK", "KRvK", "KBvK", "KNvK",
+        "KQQvK", "KQRvK", "KQBvK", "KQNvK", "KRRvK", "KRBvK", "KRNvK", "KBBvK", "KBNvK", "KNNvK",
+        "KQvKQ", "KQvKR", "KQvKB", "KQvKN", "KRvKR", "KRvKB", "KRvKN", "KBvKB", "KBvKN", "KNvKN"
+    };
+
+    /**
+     * The byte of a position that has not been decided yet (a draw at the end), and of an index
+     * that is not a legal position while the table is built (written as a draw)
+     */
+    private static final int UNDECIDED = 0;
+    private static final byte ILLEGAL = (byte) 255;
+
+    /**
+     * The longest distance to mate a byte can hold, in plies
+     */
+    private static final int MAX_PLIES = 253;
+
+    /**
+     * A count that never reaches 0, for positions with a capture that does not lose
+     */
+    private static final byte NEVER_LOST = Byte.MAX_VALUE;
+
+    /**
+     * The most moves a position of a table can have
+     */
+    private static final int MAX_MOVES = 80;
+
+    /**
+     * The pieces of the table being built
+     */
+    private final Material material;
+
+    /**
+     * The smaller tables the captures lead into
+     */
+    private final Tablebase smaller;
+
+    /**
+     * The bytes of the table being built, one per position for white to move and then one for
+     * black to move, in the format of the table files
+     */
+    private final byte[] results;
+
+    /**
+     * For each position, the number of different positions its non-capturing moves lead to
+     * that have not been found to be wins for the opponent yet
+     */
+    private final byte[] counts;
+
+    /**
+     * For each position, the byte it gets once the spreading reaches it because of a capture
+     * that wins or loses in the smaller table, or 0
+     */
+    private final byte[] pending;
+
+    /**
+     * For each position where some captures lose and the others do not capture, the byte it
+     * gets if the other moves lose too, which is then at least this, or 0
+     */
+    private final byte[] captureLosses;
+
+    /**
+     * The largest byte in pending
+     */
+    private int maxPending;
+
+    /**
+     * Scratch arrays for the squares of a position after a move, the pieces left after a
+     * capture and the indexes of the positions reached from one position
+     */
+    private final int[] next;
+    private final Tablebase.Buffers left = new Tablebase.Buffers();
+    private final int[] reached = new int[MAX_MOVES];
+
+    /**
+     * Constructor, allocates the table
+     * @param material the pieces of the table
+     * @param smaller the tablebase with the tables the captures lead into
+     */
+    TablebaseGenerator(Material material, Tablebase smaller) {
+        this.material = material;
+        this.smaller = smaller;
+        results = new byte[2 * material.size];
+        counts = new byte[2 * material.size];
+        pending = new byte[2 * material.size];
+        captureLosses = new byte[2 * material.size];
+        next = new int[material.count];
+    }
+
+    /**
+     * Builds the table
+     * @return the bytes of the table, in the format of the table files
+     */
+    byte[] generate() {
+        int size = material.size;
+        int[] squares = new int[material.count];
+        for (int at = 0; at < 2 * size; at++) {
+            boolean white = at < size;
+            int index = white ? at : at - size;
+            material.decode(index, squares);
+            if (isLegal(squares, white, index)) {
+                initialize(squares, white, at);
+            } else {
+                results[at] = ILLEGAL;
+            }
+        }
+        for (int plies = 0; plies < MAX_PLIES; plies++) {
+            boolean found = false;
+            for (int at = 0; at < 2 * size; at++) {
+                if ((results[at] & 0xFF) == plies + 1) {
+                    found = true;
+                    boolean white = at < size;
+                    material.decode(white ? at : at - size, squares);
+                    spread(squares, white, plies);
+                } else if (results[at] == UNDECIDED && (pending[at] & 0xFF) == plies + 2) {
+                    results[at] = (byte) (plies + 2);
+                }
+            }
+            if (!found && plies + 2 > maxPending) {
+                break;
+            }
+        }
+        for (int at = 0; at < 2 * size; at++) {
+            if (results[at] == ILLEGAL) {
+                results[at] = UNDECIDED;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Checks if a decoded index is a legal position: no two pieces share a square, the index is
+     * the one the position is stored under, and the player who just moved is not in check
+     */
+    private boolean isLegal(int[] squares, boolean white, int index) {
+        long occupied = 0;
+        for (int sq : squares) {
+            occupied |= 1L << sq;
+        }
+        return Long.bitCount(occupied) == material.count && material.index(squares) == index
+                && !isAttacked(squares, squares[white ? 1 : 0], white, occupied);
+    }
+
+    /**
+     * Finds the mates and stalemates, the results of the captures and the number of different
+     * positions the other moves lead to of a legal position
+     * @param squares the squares of the pieces
+     * @param white if it is white's turn
+     * @param at the position of the byte of the position in results
+     */
+    private void initialize(int[] squares, boolean white, int at) {
+        int minWin = Integer.MAX_VALUE;
+        int maxLoss = -1;
+        boolean escapes = false;
+        int positions = 0;
+        int moves = 0;
+        long occupied = occupied(squares);
+        for (int slot = 0; slot < material.count; slot++) {
+            if (material.whites[slot] != white || squares[slot] < 0) {
+                continue;
+            }
+            long targets = attacks(material.types[slot], squares[slot], occupied)
+                    & ~occupancy(squares, white);
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                int captured = move(squares, slot, to);
+                if (isAttacked(next, next[white ? 0 : 1], !white, occupied(next))) {
+                    continue;
+                }
+                moves++;
+                if (captured < 0) {
+                    positions = addReached(positions, material.index(next));
+                    continue;
+                }
+                int code = captureCode(captured, !white);
+                if (code == UNDECIDED) {
+                    escapes = true;
+                } else if ((code - 1 & 1) == 0) {
+                    minWin = Math.min(minWin, code); // the opponent loses in code - 1 plies
+                } else {
+                    maxLoss = Math.max(maxLoss, code);
+                }
+            }
+        }
+        if (moves == 0) {
+            boolean checked = isAttacked(squares, squares[white ? 0 : 1], !white, occupied);
+            results[at] = checked ? (byte) 1 : UNDECIDED; // mated now, or stalemate
+            counts[at] = NEVER_LOST;
+        } else if (minWin != Integer.MAX_VALUE) {
+            counts[at] = NEVER_LOST;
+            setPending(at, minWin + 1);
+        } else if (escapes) {
+            counts[at] = NEVER_LOST;
+        } else if (positions == 0) {
+            setPending(at, maxLoss + 1); // every move is a capture that loses
+        } else {
+            counts[at] = (byte) positions;
+            captureLosses[at] = (byte) Math.max(maxLoss + 1, 0);
+        }
+    }
+
+    /**
+     * Sets the byte a position gets once the spreading reaches it
+     */
+    private void setPending(int at, int code) {
+        if (code - 1 <= MAX_PLIES) {
+            pending[at] = (byte) code;
+            maxPending = Math.max(maxPending, code);
+        }
+    }
+
+    /**
+     * Spreads the result of a decided position to the positions that can move into it
+     * @param squares the squares of the pieces of the decided position
+     * @param white if it is white's turn in the decided position
+     * @param plies the number of plies to mate of the decided position
+     */
+    private void spread(int[] squares, boolean white, int plies) {
+        int size = material.size;
+        long occupied = occupied(squares);
+        int positions = 0;
+        // the player who is not to move made the last move, so their pieces move back
+        for (int slot = 0; slot < material.count; slot++) {
+            if (material.whites[slot] == white) {
+                continue;
+            }
+            int from = squares[slot];
+            long targets = attacks(material.types[slot], from, occupied) & ~occupied;
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                squares[slot] = to;
+                long before = occupied ^ 1L << from ^ 1L << to;
+                // in the earlier position the player to move now could not have been in check
+                if (!isAttacked(squares, squares[white ? 0 : 1], !white, before)) {
+                    int index = material.index(squares);
+                    int count = positions;
+                    positions = addReached(positions, index);
+                    if (positions != count) {
+                        update(white ? size + index : index, plies);
+                    }
+                }
+                squares[slot] = from;
+            }
+        }
+    }
+
+    /**
+     * Updates a position that can move into a decided position
+     * @param at the position of the byte of the earlier position in results
+     * @param plies the number of plies to mate of the decided position
+     */
+    private void update(int at, int plies) {
+        if (results[at] != UNDECIDED) {
+            return;
+        }
+        if ((plies & 1) == 0) {
+            results[at] = (byte) (plies + 2); // the move mates the opponent in plies + 1
+        } else if (counts[at] != NEVER_LOST && --counts[at] == 0) {
+            // every move loses, and the captures that lose may lose later than this
+            int code = Math.max(plies + 2, captureLosses[at] & 0xFF);
+            if (code == plies + 2) {
+                results[at] = (byte) code;
+            } else {
+                setPending(at, code);
+            }
+        }
+    }
+
+    /**
+     * Adds an index to the indexes reached from a position, if it is not there yet
+     * @return the number of indexes reached
+     */
+    private int addReached(int count, int index) {
+        for (int i = 0; i < count; i++) {
+            if (reached[i] == index) {
+                return count;
+            }
+        }
+        reached[count] = index;
+        return count + 1;
+    }
+
+    /**
+     * Makes a move on a copy of the squares in next
+     * @param squares the squares before the move
+     * @param slot the slot of the piece that moves
+     * @param to the square it moves to
+     * @return the slot of the piece captured, which is taken off the board (square -1), or -1
+     */
+    private int move(int[] squares, int slot, int to) {
+        int captured = -1;
+        for (int i = 0; i < material.count; i++) {
+            next[i] = squares[i];
+            if (squares[i] == to) {
+                captured = i;
+                next[i] = -1;
+            }
+        }
+        next[slot] = to;
+        return captured;
+    }
+
+    /**
+     * Looks up the position in next after a capture in the smaller table
+     * @param captured the slot of the piece that was captured
+     * @param whiteToMove if it is white's turn after the capture
+     * @return the byte of the position
+     * @throws IllegalStateException if the smaller table is missing
+     */
+    private int captureCode(int captured, boolean whiteToMove) {
+        int count = 0;
+        for (int slot = 0; slot < material.count; slot++) {
+            if (slot != captured) {
+                left.types[count] = material.types[slot];
+                left.whites[count] = material.whites[slot];
+                left.squares[count] = next[slot];
+                count++;
+            }
+        }
+        int code = smaller.code(count, left, whiteToMove);
+        if (code < 0) {
+            throw new IllegalStateException("Missing a table that " + material.name
+                    + " depends on");
+        }
+        return code;
+    }
+
+    /**
+     * @return the squares a piece of a type on a square attacks
+     */
+    private static long attacks(int type, int sq, long occupied) {
+        switch (type) {
+            case Position.KING:
+                return Bitboards.kingAttacks(sq);
+            case Position.QUEEN:
+                return Bitboards.queenAttacks(sq, occupied);
+            case Position.ROOK:
+                return Bitboards.rookAttacks(sq, occupied);
+            case Position.BISHOP:
+                return Bitboards.bishopAttacks(sq, occupied);
+            default:
+                return Bitboards.knightAttacks(sq);
+        }
+    }
+
+    /**
+     * Checks if a square is attacked by a player's pieces that are still on the board
+     */
+    private boolean isAttacked(int[] squares, int target, boolean byWhite, long occupied) {
+        for (int slot = 0; slot < material.count; slot++) {
+            if (material.whites[slot] == byWhite && squares[slot] >= 0 && squares[slot] != target
+                    && (attacks(material.types[slot], squares[slot], occupied)
+                    & 1L << target) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the bitboard of the squares of the pieces still on the board
+     */
+    private long occupied(int[] squares) {
+        long ret = 0;
+        for (int sq : squares) {
+            if (sq >= 0) {
+                ret |= 1L << sq;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the bitboard of the squares of one player's pieces
+     */
+    private long occupancy(int[] squares, boolean white) {
+        long ret = 0;
+        for (int slot = 0; slot < material.count; slot++) {
+            if (material.whites[slot] == white && squares[slot] >= 0) {
+                ret |= 1L << squares[slot];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the tables a table depends on: the tables of the pieces left after each capture,
+     * except two bare kings
+     * @param material the pieces of the table
+     * @return the names of the tables
+     */
+    static List<String> smallerTables(Material material) {
+        List<String> ret = new ArrayList<>();
+        if (material.count == 3) {
+            return ret;
+        }
+        for (int captured = 2; captured < material.count; captured++) {
+            StringBuilder white = new StringBuilder("K");
+            StringBuilder black = new StringBuilder("K");
+            for (int slot = 2; slot < material.count; slot++) {
+                if (slot != captured) {
+                    (material.whites[slot] ? white : black)
+                            .append(Material.LETTERS.charAt(material.types[slot]));
+                }
+            }
+            String whiteSide = Material.side(white.toString());
+            String blackSide = Material.side(black.toString());
+            String name = Material.isStronger(blackSide, whiteSide)
+                    ? blackSide + "v" + whiteSide : whiteSide + "v" + blackSide;
+            if (!ret.contains(name)) {
+                ret.add(name);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Builds a table and writes it to its file, first building the tables it depends on that
+     * do not have a file yet
+     * @param directory the directory of the table files
+     * @param name the name of the table, for example KQvKR
+     * @throws IOException if the file cannot be written
+     */
+    public static void generate(Path directory, String name) throws IOException {
+        Material material = new Material(name);
+        for (String smaller : smallerTables(material)) {
+            if (!Files.isRegularFile(directory.resolve(smaller + Tablebase.EXTENSION))) {
+                generate(directory, smaller);
+            }
+        }
+        long start = System.nanoTime();
+        byte[] table = new TablebaseGenerator(material, new Tablebase(directory)).generate();
+        Files.write(directory.resolve(name + Tablebase.EXTENSION), table);
+        int wins = 0;
+        int losses = 0;
+        int longest = 0;
+        for (byte code : table) {
+            int plies = (code & 0xFF) - 1;
+            if (plies >= 0) {
+                if ((plies & 1) != 0) {
+                    wins++;
+                } else {
+                    losses++;
+                }
+                longest = Math.max(longest, plies);
+            }
+        }
+        System.out.printf("%-8s %10d wins %10d losses   longest mate %3d plies   %6d ms%n",
+                name, wins, losses, longest, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Builds tables
+     * @param args {@code <directory> [tables...]}
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TablebaseGenerator <directory> [tables...]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        String[] names = args.length > 1
+                ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_TABLES;
+        for (String name : names) {
+            generate(directory, name);
+        }
+    }
+}